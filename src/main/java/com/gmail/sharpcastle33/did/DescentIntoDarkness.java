@@ -6,6 +6,7 @@ import com.gmail.sharpcastle33.did.config.CaveStyles;
 import com.gmail.sharpcastle33.did.config.ConfigUtil;
 import com.gmail.sharpcastle33.did.config.DataPacks;
 import com.gmail.sharpcastle33.did.config.InvalidConfigException;
+import com.gmail.sharpcastle33.did.config.Schematics;
 import com.gmail.sharpcastle33.did.instancing.CaveTrackerManager;
 import com.gmail.sharpcastle33.did.listeners.CaveEntranceListener;
 import com.gmail.sharpcastle33.did.listeners.CommandListener;
@@ -16,16 +17,8 @@ import com.gmail.sharpcastle33.did.listeners.PacketListener;
 import com.gmail.sharpcastle33.did.listeners.PlayerListener;
 import com.google.common.base.Charsets;
 import com.onarandombox.MultiverseCore.api.Core;
-import com.sk89q.worldedit.bukkit.BukkitAdapter;
-import com.sk89q.worldedit.extent.clipboard.Clipboard;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import org.bukkit.Bukkit;
-import org.bukkit.Material;
-import org.bukkit.World;
-import org.bukkit.block.data.BlockData;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.command.TabCompleter;
@@ -40,15 +33,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Field;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
 import java.util.TimeZone;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -63,7 +52,7 @@ public class DescentIntoDarkness extends JavaPlugin {
 	private Scoreboard scoreboard;
 
 	private FileConfiguration config = getConfig();
-	private final Map<String, Clipboard> schematics = new HashMap<>();
+	private final Schematics schematics = new Schematics(getDataFolder());
 	private final CaveStyles caveStyles = new CaveStyles();
 
 	public static DescentIntoDarkness instance;
@@ -82,22 +71,7 @@ public class DescentIntoDarkness extends JavaPlugin {
 			} catch (InvalidConfigException e) {
 				return null;
 			}
-			BlockData data = BukkitAdapter.adapt(state);
-			return new ChunkGenerator() {
-				@Override
-				public @NotNull ChunkData generateChunkData(@NotNull World world, @NotNull Random random, int x, int z, @NotNull BiomeGrid biome) {
-					ChunkData chunkData = createChunkData(world);
-					chunkData.setRegion(0, 0, 0, 16, 1, 16, Material.BEDROCK);
-					chunkData.setRegion(0, 1, 0, 16, 255, 16, data);
-					chunkData.setRegion(0, 255, 0, 16, 256, 16, Material.BEDROCK);
-					return chunkData;
-				}
-
-				@Override
-				public boolean isParallelCapable() {
-					return true;
-				}
-			};
+			return new FullChunkGenerator(state);
 		}
 
 		return null;
@@ -248,35 +222,8 @@ public class DescentIntoDarkness extends JavaPlugin {
 		return caveStyles;
 	}
 
-	public Clipboard getSchematic(String name) {
-		Clipboard schematic = schematics.get(name);
-		if (schematic != null) {
-			return schematic;
-		}
-		File schemDir = new File(getDataFolder(), "schematics");
-		if (!schemDir.exists()) {
-			//noinspection ResultOfMethodCallIgnored
-			schemDir.mkdirs();
-		}
-
-		File schemFile = new File(schemDir, name + ".schem");
-		if (!schemFile.exists()) {
-			return null;
-		}
-
-		ClipboardFormat format = ClipboardFormats.findByFile(schemFile);
-		if (format == null) {
-			return null;
-		}
-		try (ClipboardReader reader = format.getReader(new FileInputStream(schemFile))) {
-			schematic = reader.read();
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-
-		schematics.put(name, schematic);
-		return schematic;
+	public Schematics getSchematics() {
+		return schematics;
 	}
 
 	public CaveTrackerManager getCaveTrackerManager() {
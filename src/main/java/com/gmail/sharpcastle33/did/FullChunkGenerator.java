@@ -0,0 +1,42 @@
+package com.gmail.sharpcastle33.did;
+
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.generator.ChunkGenerator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * Generates chunks completely filled with a single block, with a bedrock floor and ceiling
+ */
+public class FullChunkGenerator extends ChunkGenerator {
+	private final BlockStateHolder<?> block;
+	private final BlockData data;
+
+	public FullChunkGenerator(BlockStateHolder<?> block) {
+		this.block = block;
+		this.data = BukkitAdapter.adapt(block);
+	}
+
+	public BlockStateHolder<?> getBlock() {
+		return block;
+	}
+
+	@Override
+	public @NotNull ChunkData generateChunkData(@NotNull World world, @NotNull Random random, int x, int z, @NotNull BiomeGrid biome) {
+		ChunkData chunkData = createChunkData(world);
+		chunkData.setRegion(0, 0, 0, 16, 1, 16, Material.BEDROCK);
+		chunkData.setRegion(0, 1, 0, 16, 255, 16, data);
+		chunkData.setRegion(0, 255, 0, 16, 256, 16, Material.BEDROCK);
+		return chunkData;
+	}
+
+	@Override
+	public boolean isParallelCapable() {
+		return true;
+	}
+}
@@ -6,6 +6,7 @@ import com.sk89q.worldedit.extent.transform.BlockTransformExtent;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.math.Vector3;
 import com.sk89q.worldedit.math.transform.AffineTransform;
+import com.sk89q.worldedit.math.transform.Identity;
 import com.sk89q.worldedit.math.transform.Transform;
 import com.sk89q.worldedit.util.Direction;
 import com.sk89q.worldedit.util.nbt.BinaryTagIO;
@@ -16,6 +17,7 @@ import com.sk89q.worldedit.world.block.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.OfflinePlayer;
@@ -32,13 +34,13 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Function;
 import java.util.logging.Level;
 
@@ -85,6 +87,29 @@ public class Util {
 		return new AffineTransform(m0.getX(), m1.getX(), m2.getX(), 0, m0.getY(), m1.getY(), m2.getY(), 0, m0.getZ(), m1.getZ(), m2.getZ(), 0);
 	}
 
+	/**
+	 * Returns the 3x4 matrix of the given transform in row-major order if all its coefficients are integers, or null otherwise
+	 */
+	@Nullable
+	public static int[] toIntegerMatrix(Transform transform) {
+		if (transform instanceof Identity) {
+			return new int[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0};
+		}
+		if (!(transform instanceof AffineTransform)) {
+			return null;
+		}
+		double[] coefficients = ((AffineTransform) transform).coefficients();
+		int[] matrix = new int[12];
+		for (int i = 0; i < 12; i++) {
+			double coefficient = coefficients[i];
+			if (coefficient != Math.rint(coefficient) || Math.abs(coefficient) > 1 << 26) {
+				return null;
+			}
+			matrix[i] = (int) coefficient;
+		}
+		return matrix;
+	}
+
 	public static Direction getOpposite(Direction dir) {
 		switch (dir) {
 			case NORTH: return Direction.SOUTH;
@@ -118,13 +143,100 @@ public class Util {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	public static <T extends BlockStateHolder<T>> BlockStateHolder<?> transformBlock(BlockStateHolder<?> block, Transform transform) {
+	/**
+	 * Returns an id in [0, {@link #AXIS_ALIGNED_TRANSFORM_COUNT}) identifying the given transform if it is an axis-aligned
+	 * rotation or reflection without translation, or -1 otherwise
+	 */
+	public static int getAxisAlignedTransformId(Transform transform) {
+		if (transform instanceof Identity) {
+			return 0;
+		}
+		if (!(transform instanceof AffineTransform)) {
+			return -1;
+		}
+		double[] coefficients = ((AffineTransform) transform).coefficients();
+		if (coefficients[3] != 0 || coefficients[7] != 0 || coefficients[11] != 0) {
+			return -1;
+		}
+		// each row must contain exactly one +-1, in distinct columns
+		int usedColumns = 0;
+		int permutation = 0;
+		int signs = 0;
+		for (int row = 0; row < 3; row++) {
+			int column = -1;
+			for (int col = 0; col < 3; col++) {
+				double coefficient = coefficients[row * 4 + col];
+				if (coefficient == 0) {
+					continue;
+				}
+				if ((coefficient != 1 && coefficient != -1) || column != -1) {
+					return -1;
+				}
+				column = col;
+				if (coefficient < 0) {
+					signs |= 1 << row;
+				}
+			}
+			if (column == -1 || (usedColumns & (1 << column)) != 0) {
+				return -1;
+			}
+			usedColumns |= 1 << column;
+			permutation = permutation * 3 + column;
+		}
+		// permutation is a base 3 number with distinct digits, < 27
+		return PERMUTATION_INDEXES[permutation] * 8 + signs;
+	}
+
+	public static final int AXIS_ALIGNED_TRANSFORM_COUNT = 48;
+	private static final int[] PERMUTATION_INDEXES = new int[27];
+	static {
+		// 012, 021, 102, 120, 201, 210 in base 3
+		int[] permutations = {5, 7, 11, 15, 19, 21};
+		for (int i = 0; i < permutations.length; i++) {
+			PERMUTATION_INDEXES[permutations[i]] = i;
+		}
+	}
+	// pre-transformed block states, indexed by transform id and then by block state ordinal
+	private static final AtomicReferenceArray<AtomicReferenceArray<BlockState>> TRANSFORMED_STATES = new AtomicReferenceArray<>(AXIS_ALIGNED_TRANSFORM_COUNT);
+
+	/**
+	 * Transforms the given block state, where transformId is the result of {@link #getAxisAlignedTransformId(Transform)}
+	 */
+	public static BlockState transformBlock(BlockState block, Transform transform, int transformId) {
+		if (transformId == 0) {
+			return block;
+		}
+		if (transformId < 0) {
+			return transformBlock(block, transform).toImmutableState();
+		}
+		AtomicReferenceArray<BlockState> cache = TRANSFORMED_STATES.get(transformId);
+		if (cache == null) {
+			TRANSFORMED_STATES.compareAndSet(transformId, null, new AtomicReferenceArray<>(BlockTypesCache.states.length));
+			cache = TRANSFORMED_STATES.get(transformId);
+		}
+		int ordinal = block.getOrdinal();
+		BlockState transformed = cache.get(ordinal);
+		if (transformed == null) {
+			transformed = transformBlockUncached(block, transform).toImmutableState();
+			cache.set(ordinal, transformed);
+		}
+		return transformed;
+	}
+
+	public static BlockStateHolder<?> transformBlock(BlockStateHolder<?> block, Transform transform) {
 		if (transform.isIdentity()) {
 			return block;
 		}
 		block = toRealImmutable(block);
+		int transformId = getAxisAlignedTransformId(transform);
+		if (transformId >= 0) {
+			return transformBlock((BlockState) block, transform, transformId);
+		}
+		return transformBlockUncached(block, transform);
+	}
 
+	@SuppressWarnings("unchecked")
+	private static <T extends BlockStateHolder<T>> BlockStateHolder<?> transformBlockUncached(BlockStateHolder<?> block, Transform transform) {
 		BlockType type = block.getBlockType();
 		if (type.hasProperty(PropertyKey.NORTH)
 				&& type.hasProperty(PropertyKey.SOUTH)
@@ -235,35 +347,7 @@ public class Util {
 	}
 
 	public static void ensureConnected(List<Centroid> centroidsInOut, int connectingCentroidRadius, Function<Vector3, Centroid> centroidSupplier) {
-		// find the minimum spanning tree of the centroids using Kruskal's algorithm, to ensure they are connected
-		List<Pair<Centroid, Centroid>> edges = new ArrayList<>();
-		for (int i = 0; i < centroidsInOut.size() - 1; i++) {
-			for (int j = i + 1; j < centroidsInOut.size(); j++) {
-				edges.add(Pair.of(centroidsInOut.get(i), centroidsInOut.get(j)));
-			}
-		}
-		edges.sort(Comparator.comparingDouble(edge -> edge.getLeft().pos.distance(edge.getRight().pos) - edge.getLeft().size - edge.getRight().size));
-		Map<Centroid, Integer> nodeGroups = new HashMap<>();
-		int groupCount = 0;
-		ListIterator<Pair<Centroid, Centroid>> edgesItr = edges.listIterator();
-		while (edgesItr.hasNext()) {
-			Pair<Centroid, Centroid> edge = edgesItr.next();
-			Integer groupA = nodeGroups.get(edge.getLeft());
-			Integer groupB = nodeGroups.get(edge.getRight());
-			if (groupA != null && groupA.equals(groupB)) {
-				edgesItr.remove();
-			} else {
-				if (groupA != null && groupB != null) {
-					nodeGroups.replaceAll((key, val) -> val.equals(groupB) ? groupA : val);
-				} else {
-					Integer group = groupA == null ? groupB == null ? groupCount++ : groupB : groupA;
-					nodeGroups.put(edge.getLeft(), group);
-					nodeGroups.put(edge.getRight(), group);
-				}
-			}
-		}
-
-		for (Pair<Centroid, Centroid> edge : edges) {
+		for (Pair<Centroid, Centroid> edge : findSpanningTree(new ArrayList<>(centroidsInOut))) {
 			double distance = edge.getLeft().pos.distance(edge.getRight().pos);
 			double actualDistance = distance - edge.getLeft().size - edge.getRight().size;
 			if (actualDistance < 0) {
@@ -283,6 +367,139 @@ public class Util {
 		}
 	}
 
+	/**
+	 * Finds the minimum spanning tree of the centroids using Kruskal's algorithm, where the length of an edge is the
+	 * gap between the two spheres. Returns the edges of the tree from shortest to longest.
+	 */
+	private static List<Pair<Centroid, Centroid>> findSpanningTree(List<Centroid> centroids) {
+		int count = centroids.size();
+		if (count < 2) {
+			return new ArrayList<>();
+		}
+
+		int maxSize = 0;
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+		for (Centroid centroid : centroids) {
+			maxSize = Math.max(maxSize, centroid.size);
+			minX = Math.min(minX, centroid.pos.getX());
+			minY = Math.min(minY, centroid.pos.getY());
+			minZ = Math.min(minZ, centroid.pos.getZ());
+			maxX = Math.max(maxX, centroid.pos.getX());
+			maxY = Math.max(maxY, centroid.pos.getY());
+			maxZ = Math.max(maxZ, centroid.pos.getZ());
+		}
+		Vector3 min = Vector3.at(minX, minY, minZ);
+		double extent = min.distance(Vector3.at(maxX, maxY, maxZ));
+
+		// Only pairs of centroids within the search radius of each other are considered. Any other pair has a gap
+		// longer than the bound, so the edges no longer than the bound are exactly the shortest edges of the full
+		// graph, and Kruskal's algorithm picks the same ones from them. Widen the search until they connect everything.
+		double searchRadius = Math.max(Math.max(1, 4 * maxSize), extent / 1024);
+		while (true) {
+			boolean allPairs = searchRadius >= extent;
+			double bound = allPairs ? Double.POSITIVE_INFINITY : searchRadius - 2 * maxSize;
+			List<SpanningEdge> edges = findEdgesWithin(centroids, min, searchRadius, bound);
+			// ties are broken by index, like a stable sort of all pairs would
+			edges.sort(Comparator.<SpanningEdge>comparingDouble(edge -> edge.length).thenComparingInt(edge -> edge.a).thenComparingInt(edge -> edge.b));
+
+			int[] parents = new int[count];
+			int[] sizes = new int[count];
+			for (int i = 0; i < count; i++) {
+				parents[i] = i;
+				sizes[i] = 1;
+			}
+			List<Pair<Centroid, Centroid>> tree = new ArrayList<>(count - 1);
+			for (SpanningEdge edge : edges) {
+				int rootA = findRoot(parents, edge.a);
+				int rootB = findRoot(parents, edge.b);
+				if (rootA == rootB) {
+					continue;
+				}
+				if (sizes[rootA] < sizes[rootB]) {
+					int temp = rootA;
+					rootA = rootB;
+					rootB = temp;
+				}
+				parents[rootB] = rootA;
+				sizes[rootA] += sizes[rootB];
+				tree.add(Pair.of(centroids.get(edge.a), centroids.get(edge.b)));
+				if (tree.size() == count - 1) {
+					return tree;
+				}
+			}
+			if (allPairs) {
+				return tree;
+			}
+			searchRadius *= 2;
+		}
+	}
+
+	private static int findRoot(int[] parents, int node) {
+		while (parents[node] != node) {
+			parents[node] = parents[parents[node]];
+			node = parents[node];
+		}
+		return node;
+	}
+
+	private static List<SpanningEdge> findEdgesWithin(List<Centroid> centroids, Vector3 min, double searchRadius, double bound) {
+		// bucket the centroids into a grid of cells as wide as the search radius, so each only has to be compared to
+		// the centroids in the neighbouring cells
+		Map<Long, List<Integer>> grid = new HashMap<>();
+		int[] cells = new int[centroids.size() * 3];
+		for (int i = 0; i < centroids.size(); i++) {
+			Vector3 offset = centroids.get(i).pos.subtract(min);
+			cells[i * 3] = (int) (offset.getX() / searchRadius);
+			cells[i * 3 + 1] = (int) (offset.getY() / searchRadius);
+			cells[i * 3 + 2] = (int) (offset.getZ() / searchRadius);
+			grid.computeIfAbsent(cellKey(cells[i * 3], cells[i * 3 + 1], cells[i * 3 + 2]), k -> new ArrayList<>()).add(i);
+		}
+
+		List<SpanningEdge> edges = new ArrayList<>();
+		for (int a = 0; a < centroids.size(); a++) {
+			Centroid centroidA = centroids.get(a);
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					for (int dz = -1; dz <= 1; dz++) {
+						List<Integer> cell = grid.get(cellKey(cells[a * 3] + dx, cells[a * 3 + 1] + dy, cells[a * 3 + 2] + dz));
+						if (cell == null) {
+							continue;
+						}
+						for (int b : cell) {
+							if (b <= a) {
+								continue;
+							}
+							Centroid centroidB = centroids.get(b);
+							double distance = centroidA.pos.distance(centroidB.pos);
+							double length = distance - centroidA.size - centroidB.size;
+							if (distance <= searchRadius && length <= bound) {
+								edges.add(new SpanningEdge(a, b, length));
+							}
+						}
+					}
+				}
+			}
+		}
+		return edges;
+	}
+
+	private static long cellKey(int x, int y, int z) {
+		return ((long) (x & 0x1fffff) << 42) | ((long) (y & 0x1fffff) << 21) | (z & 0x1fffff);
+	}
+
+	private static final class SpanningEdge {
+		private final int a;
+		private final int b;
+		private final double length;
+
+		private SpanningEdge(int a, int b, double length) {
+			this.a = a;
+			this.b = b;
+			this.length = length;
+		}
+	}
+
 	public static boolean saveSafely(File file, FileSaver saver) {
 		File swapFile = new File(file.getParentFile(), file.getName() + ".swp");
 		File backupFile = new File(file.getParentFile(), file.getName() + ".bak");
@@ -13,7 +13,15 @@ import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 public final class BlockTypeRange<T extends Comparable<T>> {
+	private static final int DOUBLE_BINS = 1024;
+	private static final double BIN_EPSILON = 1e-9;
+
 	private final List<Entry<T>> entries;
+	// integer ranges: the block for each y level from 0 to 255
+	private BlockProvider[] intTable;
+	// double ranges: the block for each bin from 0 to 1, unless the bin crosses the edge of a range
+	private BlockProvider[] doubleBins;
+	private boolean[] ambiguousBins;
 
 	private BlockTypeRange(List<Entry<T>> entries) {
 		this.entries = entries;
@@ -29,6 +37,65 @@ public final class BlockTypeRange<T extends Comparable<T>> {
 		return null;
 	}
 
+	/**
+	 * Gets the block for the given y level of an integer range, using a lookup table for y levels in the world
+	 */
+	@Nullable
+	public BlockProvider getInt(int yLevel) {
+		if (intTable != null && yLevel >= 0 && yLevel < intTable.length) {
+			return intTable[yLevel];
+		}
+		@SuppressWarnings("unchecked")
+		T boxed = (T) Integer.valueOf(yLevel);
+		return get(boxed);
+	}
+
+	/**
+	 * Gets the block for the given position of a double range, looking up which bin it falls in
+	 */
+	@Nullable
+	public BlockProvider getDouble(double yLevel) {
+		if (doubleBins != null && Double.compare(yLevel, 0.0) >= 0 && yLevel < Double.POSITIVE_INFINITY) {
+			int bin = (int) (yLevel * DOUBLE_BINS);
+			if (bin < doubleBins.length && !ambiguousBins[bin]) {
+				return doubleBins[bin];
+			}
+		}
+		@SuppressWarnings("unchecked")
+		T boxed = (T) Double.valueOf(yLevel);
+		return get(boxed);
+	}
+
+	private static void compileInt(BlockTypeRange<Integer> range) {
+		BlockProvider[] table = new BlockProvider[256];
+		for (int y = 0; y < table.length; y++) {
+			table[y] = range.get(y);
+		}
+		range.intTable = table;
+	}
+
+	private static void compileDouble(BlockTypeRange<Double> range) {
+		BlockProvider[] bins = new BlockProvider[DOUBLE_BINS + 1];
+		boolean[] ambiguous = new boolean[bins.length];
+		for (int bin = 0; bin < bins.length; bin++) {
+			// widen the bin slightly so that rounding in getDouble can't put a value in the wrong bin
+			double low = (double) bin / DOUBLE_BINS - BIN_EPSILON;
+			double high = (double) (bin + 1) / DOUBLE_BINS + BIN_EPSILON;
+			for (Entry<Double> entry : range.entries) {
+				if (entry.min <= high && entry.max >= low) {
+					if (entry.min <= low && entry.max >= high) {
+						bins[bin] = entry.block;
+					} else {
+						ambiguous[bin] = true;
+					}
+					break;
+				}
+			}
+		}
+		range.doubleBins = bins;
+		range.ambiguousBins = ambiguous;
+	}
+
 	public void validateRange(T min, T max, UnaryOperator<T> nextDown, UnaryOperator<T> nextUp) {
 		List<Pair<T, T>> unaccountedList = Lists.newArrayList(Pair.of(min, max));
 		for (Entry<T> entry : entries) {
@@ -58,11 +125,15 @@ public final class BlockTypeRange<T extends Comparable<T>> {
 	}
 
 	public static BlockTypeRange<Integer> deserializeInt(Object val) {
-		return deserialize(val, ConfigUtil::parseInt, 0, 255);
+		BlockTypeRange<Integer> range = deserialize(val, ConfigUtil::parseInt, 0, 255);
+		compileInt(range);
+		return range;
 	}
 
 	public static BlockTypeRange<Double> deserializeDouble(Object val) {
-		return deserialize(val, ConfigUtil::parseDouble, 0.0, 1.0);
+		BlockTypeRange<Double> range = deserialize(val, ConfigUtil::parseDouble, 0.0, 1.0);
+		compileDouble(range);
+		return range;
 	}
 
 	private static <T extends Comparable<T>> BlockTypeRange<T> deserialize(Object val, Function<String, T> typeParser, T min, T max) {
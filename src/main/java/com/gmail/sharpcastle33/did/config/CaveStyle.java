@@ -2,6 +2,7 @@ package com.gmail.sharpcastle33.did.config;
 
 import com.gmail.sharpcastle33.did.generator.Centroid;
 import com.gmail.sharpcastle33.did.generator.GrammarGraph;
+import com.gmail.sharpcastle33.did.generator.TagSet;
 import com.gmail.sharpcastle33.did.generator.painter.PainterStep;
 import com.gmail.sharpcastle33.did.generator.room.Room;
 import com.gmail.sharpcastle33.did.generator.structure.Structure;
@@ -248,10 +249,11 @@ public class CaveStyle {
 
 	public BlockProvider getAirBlock(int y, Centroid currentCentroid, int minRoomY, int maxRoomY) {
 		double yInCentroid = (double) (y - currentCentroid.pos.getBlockY() + currentCentroid.size) / (currentCentroid.size + currentCentroid.size);
-		for (String tag : currentCentroid.tags) {
-			BlockTypeRange<Double> range = tagAirBlocks.get(tag);
+		TagSet tags = currentCentroid.tags;
+		for (int i = 0; i < tags.size(); i++) {
+			BlockTypeRange<Double> range = tagAirBlocks.get(tags.get(i));
 			if (range != null) {
-				BlockProvider block = range.get(yInCentroid);
+				BlockProvider block = range.getDouble(yInCentroid);
 				if (block != null) {
 					return block;
 				}
@@ -259,20 +261,31 @@ public class CaveStyle {
 		}
 
 		double yInRoom = (double) (y - minRoomY) / (maxRoomY - minRoomY);
-		for (String tag : currentCentroid.tags) {
-			BlockTypeRange<Double> range = roomAirBlocks.get(tag);
+		for (int i = 0; i < tags.size(); i++) {
+			BlockTypeRange<Double> range = roomAirBlocks.get(tags.get(i));
 			if (range != null) {
-				BlockProvider block = range.get(yInRoom);
+				BlockProvider block = range.getDouble(yInRoom);
 				if (block != null) {
 					return block;
 				}
 			}
 		}
 
-		BlockProvider block = airBlock.get(y);
+		BlockProvider block = airBlock.getInt(y);
 		return block == null ? BlockProvider.AIR : block;
 	}
 
+	/**
+	 * Gets the air blocks of the given centroid for each y level from minY to maxY inclusive, indexed by y - minY
+	 */
+	public BlockProvider[] getAirBlocks(Centroid currentCentroid, int minRoomY, int maxRoomY, int minY, int maxY) {
+		BlockProvider[] blocks = new BlockProvider[Math.max(0, maxY - minY + 1)];
+		for (int y = minY; y <= maxY; y++) {
+			blocks[y - minY] = getAirBlock(y, currentCentroid, minRoomY, maxRoomY);
+		}
+		return blocks;
+	}
+
 	public BlockStateHolder<?> getBaseBlock() {
 		return baseBlock;
 	}
@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -96,6 +97,8 @@ public class CaveStyles {
 				return caveStyles;
 			}
 
+			DescentIntoDarkness.instance.getSchematics().preload(findReferencedSchematics());
+
 			for (String styleName : caveStylesConfig.getKeys(false)) {
 				try {
 					ConfigurationSection value = caveStylesConfig.getConfigurationSection(styleName);
@@ -111,6 +114,37 @@ public class CaveStyles {
 		return caveStyles;
 	}
 
+	private Set<String> findReferencedSchematics() {
+		Set<String> names = new LinkedHashSet<>();
+		for (String styleName : caveStylesConfig.getKeys(false)) {
+			ConfigurationSection caveStyle = caveStylesConfig.getConfigurationSection(styleName);
+			if (caveStyle == null) {
+				continue;
+			}
+			for (String sectionName : new String[] {"structures", "portals"}) {
+				ConfigurationSection structures = caveStyle.getConfigurationSection(sectionName);
+				if (structures == null) {
+					continue;
+				}
+				for (String key : structures.getKeys(false)) {
+					ConfigurationSection structure = structures.getConfigurationSection(key);
+					if (structure == null || !"schematic".equalsIgnoreCase(structure.getString("type"))) {
+						continue;
+					}
+					Object schematics = structure.get("schematics");
+					if (schematics instanceof List) {
+						for (Object schematic : (List<?>) schematics) {
+							names.add(String.valueOf(schematic));
+						}
+					} else if (schematics != null) {
+						names.add(String.valueOf(schematics));
+					}
+				}
+			}
+		}
+		return names;
+	}
+
 	private void inlineCaveStyleInheritance(String styleName, Set<String> styleStack, Set<String> processedStyles) {
 		if (styleStack.contains(styleName)) {
 			throw new InvalidConfigException("Detected cyclic cave style inheritance");
@@ -54,8 +54,7 @@ public class ConfigUtil {
 
 	public static BlockPredicate parseBlockPredicate(Object val) {
 		if (val instanceof String) {
-			BlockStateHolder<?> wantedBlock = parseBlock((String) val);
-			return wantedBlock::equalsFuzzy;
+			return BlockPredicate.StateSet.of(List.of(parseBlock((String) val)));
 		} else if (val instanceof List<?>) {
 			List<?> list = (List<?>) val;
 			List<BlockStateHolder<?>> blocks = new ArrayList<>();
@@ -65,12 +64,18 @@ public class ConfigUtil {
 				}
 				blocks.add(parseBlock((String) o));
 			}
-			return block -> blocks.stream().anyMatch(it -> it.equalsFuzzy(block));
+			return BlockPredicate.StateSet.of(blocks);
 		} else if (isConfigurationSection(val)) {
 			ConfigurationSection map = asConfigurationSection(val);
 			boolean inverted = map.getBoolean("inverted", false);
 			BlockPredicate predicate = parseBlockPredicate(require(map, "block"));
-			return block -> predicate.test(block) != inverted;
+			if (!inverted) {
+				return predicate;
+			}
+			if (predicate instanceof BlockPredicate.StateSet) {
+				return ((BlockPredicate.StateSet) predicate).invert();
+			}
+			return block -> !predicate.test(block);
 		} else {
 			throw new InvalidConfigException("Invalid block predicate: " + val);
 		}
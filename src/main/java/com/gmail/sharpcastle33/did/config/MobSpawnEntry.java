@@ -153,8 +153,8 @@ public final class MobSpawnEntry {
 		double xSize = map.getDouble("xSize", 0);
 		double ySize = map.getDouble("ySize", 0);
 		double zSize = map.getDouble("zSize",0);
-		BlockPredicate canSpawnOn = map.contains("canSpawnOn") ? ConfigUtil.parseBlockPredicate(map.get("canSpawnOn")) : block -> block.getMaterial().isSolid();
-		BlockPredicate canSpawnIn = map.contains("canSpawnIn") ? ConfigUtil.parseBlockPredicate(map.get("canSpawnIn")) : block -> !block.getMaterial().isMovementBlocker() && !block.getMaterial().isLiquid();
+		BlockPredicate canSpawnOn = map.contains("canSpawnOn") ? ConfigUtil.parseBlockPredicate(map.get("canSpawnOn")) : BlockPredicate.StateSet.matching(block -> block.getMaterial().isSolid());
+		BlockPredicate canSpawnIn = map.contains("canSpawnIn") ? ConfigUtil.parseBlockPredicate(map.get("canSpawnIn")) : BlockPredicate.StateSet.matching(block -> !block.getMaterial().isMovementBlocker() && !block.getMaterial().isLiquid());
 		boolean centeredSpawn = map.getBoolean("centeredSpawn", false);
 		boolean randomRotation = map.getBoolean("randomRotation", true);
 		return new MobSpawnEntry(name, mob, singleMobCost, minPackCost, maxPackCost, weight, minDistance, maxDistance, cooldown, despawnRange, xSize, ySize, zSize, canSpawnOn, canSpawnIn, centeredSpawn, randomRotation);
@@ -0,0 +1,138 @@
+package com.gmail.sharpcastle33.did.config;
+
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BlockState;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The blocks of a schematic, stored as a palette and one palette index per block of its bounding box
+ */
+public final class SchematicData {
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+	private final BlockState[] palette;
+	// indexed by (y, z, x)
+	private final char[] blocks;
+	// the schematic as loaded, only kept if it has entities that need to be copied
+	private final @Nullable Clipboard entitySource;
+
+	SchematicData(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ, BlockState[] palette, char[] blocks, @Nullable Clipboard entitySource) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.palette = palette;
+		this.blocks = blocks;
+		this.entitySource = entitySource;
+	}
+
+	static SchematicData of(Clipboard clipboard) {
+		Region region = clipboard.getRegion();
+		BlockVector3 min = region.getMinimumPoint();
+		BlockVector3 max = region.getMaximumPoint();
+		BlockVector3 origin = clipboard.getOrigin();
+		int sizeX = max.getX() - min.getX() + 1;
+		int sizeY = max.getY() - min.getY() + 1;
+		int sizeZ = max.getZ() - min.getZ() + 1;
+
+		List<BlockState> palette = new ArrayList<>();
+		Map<BlockState, Integer> paletteIndexes = new HashMap<>();
+		char[] blocks = new char[sizeX * sizeY * sizeZ];
+		for (int y = 0; y < sizeY; y++) {
+			for (int z = 0; z < sizeZ; z++) {
+				for (int x = 0; x < sizeX; x++) {
+					BlockState block = clipboard.getBlock(min.add(x, y, z));
+					Integer index = paletteIndexes.get(block);
+					if (index == null) {
+						index = palette.size();
+						if (index > Character.MAX_VALUE) {
+							throw new InvalidConfigException("Schematic has too many block states");
+						}
+						palette.add(block);
+						paletteIndexes.put(block, index);
+					}
+					blocks[(y * sizeZ + z) * sizeX + x] = (char) (int) index;
+				}
+			}
+		}
+
+		return new SchematicData(
+				min.getX() - origin.getX(), min.getY() - origin.getY(), min.getZ() - origin.getZ(),
+				sizeX, sizeY, sizeZ,
+				palette.toArray(new BlockState[0]),
+				blocks,
+				clipboard.getEntities().isEmpty() ? null : clipboard
+		);
+	}
+
+	/**
+	 * Passes each block to the consumer, with its position relative to the origin of the schematic
+	 */
+	public void forEachBlock(BlockConsumer consumer) {
+		for (int y = 0; y < sizeY; y++) {
+			for (int z = 0; z < sizeZ; z++) {
+				for (int x = 0; x < sizeX; x++) {
+					consumer.accept(minX + x, minY + y, minZ + z, palette[blocks[(y * sizeZ + z) * sizeX + x]]);
+				}
+			}
+		}
+	}
+
+	int getMinX() {
+		return minX;
+	}
+
+	int getMinY() {
+		return minY;
+	}
+
+	int getMinZ() {
+		return minZ;
+	}
+
+	int getSizeX() {
+		return sizeX;
+	}
+
+	int getSizeY() {
+		return sizeY;
+	}
+
+	int getSizeZ() {
+		return sizeZ;
+	}
+
+	BlockState[] getPalette() {
+		return palette;
+	}
+
+	char[] getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Gets the schematic as it was loaded if it has entities, otherwise null
+	 */
+	@Nullable
+	public Clipboard getEntitySource() {
+		return entitySource;
+	}
+
+	@FunctionalInterface
+	public interface BlockConsumer {
+		void accept(int x, int y, int z, BlockState block);
+	}
+}
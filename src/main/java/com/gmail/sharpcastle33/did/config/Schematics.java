@@ -0,0 +1,222 @@
+package com.gmail.sharpcastle33.did.config;
+
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
+import com.sk89q.worldedit.world.block.BlockState;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Loads schematics from the schematics folder. Each loaded schematic is also written to a binary cache next to it,
+ * keyed by the modification time, size and hash of the schematic file, so that unchanged schematics don't have to be
+ * parsed again on the next reload.
+ */
+public class Schematics {
+	private static final int CACHE_MAGIC = 0x44494453; // "DIDS"
+	private static final int CACHE_VERSION = 1;
+
+	private final File schematicsDir;
+	private final File cacheDir;
+	private final Map<String, Optional<SchematicData>> schematics = new ConcurrentHashMap<>();
+
+	public Schematics(File dataFolder) {
+		this.schematicsDir = new File(dataFolder, "schematics");
+		this.cacheDir = new File(schematicsDir, ".cache");
+	}
+
+	public void clear() {
+		schematics.clear();
+	}
+
+	/**
+	 * Loads the given schematics in parallel, so that later lookups don't have to
+	 */
+	public void preload(Collection<String> names) {
+		long start = System.nanoTime();
+		names.parallelStream().distinct().forEach(this::get);
+		Bukkit.getLogger().info("Loaded " + names.size() + " schematics in " + (System.nanoTime() - start) / 1000000 + "ms");
+	}
+
+	@Nullable
+	public SchematicData get(String name) {
+		Optional<SchematicData> schematic = schematics.get(name);
+		if (schematic == null) {
+			// not computeIfAbsent, which would block loading other schematics in the same bin of the map
+			schematic = Optional.ofNullable(load(name));
+			Optional<SchematicData> existing = schematics.putIfAbsent(name, schematic);
+			if (existing != null) {
+				schematic = existing;
+			}
+		}
+		return schematic.orElse(null);
+	}
+
+	@Nullable
+	private SchematicData load(String name) {
+		if (!schematicsDir.exists()) {
+			//noinspection ResultOfMethodCallIgnored
+			schematicsDir.mkdirs();
+		}
+
+		File schemFile = new File(schematicsDir, name + ".schem");
+		if (!schemFile.exists()) {
+			return null;
+		}
+		File cacheFile = new File(cacheDir, name + ".bin");
+
+		byte[] hash = null;
+		if (cacheFile.exists()) {
+			try {
+				CachedSchematic cached = readCache(cacheFile);
+				if (cached.lastModified == schemFile.lastModified() && cached.length == schemFile.length()) {
+					return cached.data;
+				}
+				// the file was touched, it may still have the same contents
+				hash = hash(schemFile);
+				if (Arrays.equals(cached.hash, hash)) {
+					writeCache(cacheFile, schemFile, hash, cached.data);
+					return cached.data;
+				}
+			} catch (IOException | InvalidConfigException e) {
+				Bukkit.getLogger().log(Level.WARNING, "Ignoring invalid schematic cache for " + name, e);
+			}
+		}
+
+		ClipboardFormat format = ClipboardFormats.findByFile(schemFile);
+		if (format == null) {
+			return null;
+		}
+		SchematicData data;
+		try (ClipboardReader reader = format.getReader(new FileInputStream(schemFile))) {
+			Clipboard clipboard = reader.read();
+			data = SchematicData.of(clipboard);
+		} catch (IOException e) {
+			Bukkit.getLogger().log(Level.WARNING, "Failed to load schematic " + name, e);
+			return null;
+		}
+
+		// schematics with entities keep their clipboard, which can't be cached
+		if (data.getEntitySource() == null) {
+			try {
+				writeCache(cacheFile, schemFile, hash == null ? hash(schemFile) : hash, data);
+			} catch (IOException e) {
+				Bukkit.getLogger().log(Level.WARNING, "Failed to write schematic cache for " + name, e);
+			}
+		}
+		return data;
+	}
+
+	private static byte[] hash(File file) throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(Files.readAllBytes(file.toPath()));
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-1 is always supported", e);
+		}
+	}
+
+	private static CachedSchematic readCache(File cacheFile) throws IOException {
+		try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(cacheFile))))) {
+			if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) {
+				throw new IOException("Unknown cache format");
+			}
+			long lastModified = in.readLong();
+			long length = in.readLong();
+			byte[] hash = new byte[in.readUnsignedByte()];
+			in.readFully(hash);
+
+			int minX = in.readInt();
+			int minY = in.readInt();
+			int minZ = in.readInt();
+			int sizeX = in.readInt();
+			int sizeY = in.readInt();
+			int sizeZ = in.readInt();
+			BlockState[] palette = new BlockState[in.readInt()];
+			for (int i = 0; i < palette.length; i++) {
+				palette[i] = ConfigUtil.parseBlock(in.readUTF()).toImmutableState();
+			}
+			char[] blocks = new char[sizeX * sizeY * sizeZ];
+			boolean byteIndexes = palette.length <= 256;
+			for (int i = 0; i < blocks.length; i++) {
+				blocks[i] = byteIndexes ? (char) in.readUnsignedByte() : in.readChar();
+			}
+			SchematicData data = new SchematicData(minX, minY, minZ, sizeX, sizeY, sizeZ, palette, blocks, null);
+			return new CachedSchematic(lastModified, length, hash, data);
+		}
+	}
+
+	private static void writeCache(File cacheFile, File schemFile, byte[] hash, SchematicData data) throws IOException {
+		File parent = cacheFile.getParentFile();
+		if (!parent.exists()) {
+			//noinspection ResultOfMethodCallIgnored
+			parent.mkdirs();
+		}
+		// write to a temporary file first, so that a concurrent reload never sees a partial cache
+		File tempFile = new File(parent, cacheFile.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))) {
+			out.writeInt(CACHE_MAGIC);
+			out.writeInt(CACHE_VERSION);
+			out.writeLong(schemFile.lastModified());
+			out.writeLong(schemFile.length());
+			out.writeByte(hash.length);
+			out.write(hash);
+
+			out.writeInt(data.getMinX());
+			out.writeInt(data.getMinY());
+			out.writeInt(data.getMinZ());
+			out.writeInt(data.getSizeX());
+			out.writeInt(data.getSizeY());
+			out.writeInt(data.getSizeZ());
+			BlockState[] palette = data.getPalette();
+			out.writeInt(palette.length);
+			for (BlockState block : palette) {
+				out.writeUTF(block.getAsString());
+			}
+			boolean byteIndexes = palette.length <= 256;
+			for (char block : data.getBlocks()) {
+				if (byteIndexes) {
+					out.writeByte(block);
+				} else {
+					out.writeChar(block);
+				}
+			}
+		}
+		Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static final class CachedSchematic {
+		private final long lastModified;
+		private final long length;
+		private final byte[] hash;
+		private final SchematicData data;
+
+		private CachedSchematic(long lastModified, long length, byte[] hash, SchematicData data) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.hash = hash;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.MaxChangedBlocksException;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockStateHolder;
+
+/**
+ * Writes large boxes of a single block to an edit session. Each box is written with one
+ * {@link EditSession#setBlocks(Region, BlockStateHolder)} call, so that FAWE can take its bulk path for the region
+ * instead of a setBlock call per block going through the extent chain.
+ */
+public class BulkBlockWriter {
+	private final EditSession session;
+	private long blocksWritten;
+	private long nanosSpent;
+
+	public BulkBlockWriter(EditSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * Fills the box between the given inclusive bounds with the given block
+	 */
+	public void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockState block) {
+		long start = System.nanoTime();
+		try {
+			blocksWritten += session.setBlocks(new CuboidRegion(BlockVector3.at(minX, minY, minZ), BlockVector3.at(maxX, maxY, maxZ)), block);
+		} catch (MaxChangedBlocksException e) {
+			throw new RuntimeException("Could not fill blocks", e);
+		}
+		nanosSpent += System.nanoTime() - start;
+	}
+
+	public long getBlocksWritten() {
+		return blocksWritten;
+	}
+
+	public long getMillisSpent() {
+		return nanosSpent / 1000000;
+	}
+}
@@ -1,59 +1,143 @@
 package com.gmail.sharpcastle33.did.generator;
 
+import com.gmail.sharpcastle33.did.DescentIntoDarkness;
+import com.gmail.sharpcastle33.did.FullChunkGenerator;
 import com.gmail.sharpcastle33.did.Util;
 import com.gmail.sharpcastle33.did.config.CaveStyle;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.bukkit.BukkitWorld;
 import com.sk89q.worldedit.extent.AbstractDelegateExtent;
 import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.math.BlockVector2;
 import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector3;
 import com.sk89q.worldedit.math.transform.Identity;
 import com.sk89q.worldedit.math.transform.Transform;
 import com.sk89q.worldedit.regions.CuboidRegion;
 import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.util.Direction;
 import com.sk89q.worldedit.world.World;
 import com.sk89q.worldedit.world.block.BaseBlock;
 import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import com.sk89q.worldedit.world.block.BlockTypes;
 import org.bukkit.Bukkit;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class CaveGenContext implements AutoCloseable {
 	private final EditSession session;
+	private final @Nullable org.bukkit.World bukkitWorld;
+	// the block the world generator fills new chunks with, if known
+	private final @Nullable BlockState generatorBlock;
 	public final CaveStyle style;
 	public final Random rand;
 	public final long caveSeed;
+	// the seed of this context's random stream, see RandomStreams
+	private final long streamSeed;
 	private boolean debug;
+	private boolean writeBehind;
+	private boolean parallel;
+	private boolean pipelined;
+	// writes sealed chunks to the world while the rest of the cave is generated, only used in pipelined mode
+	private @Nullable ExecutorService writer;
+	private final List<Future<?>> writerTasks = new ArrayList<>();
+	private final Set<BlockVector2> prefilledChunks = new HashSet<>();
 	private final PackedBlockStorage blockStorage;
+	// the tile this context writes to if it was forked for parallel generation, otherwise null
+	private final @Nullable TileBuffer tile;
+	// reads the block storage for a context with a tile, which may run alongside other tiles
+	private final @Nullable PackedBlockStorage.ConcurrentReader tileReader;
+	private @Nullable PackedBlockStorage.BlockConsumer writeListener;
+	private final BulkBlockWriter bulkWriter;
 	private Set<BlockVector2> accessedChunks = new HashSet<>();
-	private final Deque<Transform> blockTransformStack = new LinkedList<>(Collections.singletonList(new Identity()));
-	private final Deque<Transform> inverseBlockTransformStack = new LinkedList<>(Collections.singletonList(new Identity()));
-	private final Deque<Transform> locationTransformStack = new LinkedList<>(Collections.singletonList(new Identity()));
-	private final Deque<Transform> inverseLocationTransformStack = new LinkedList<>(Collections.singletonList(new Identity()));
+	private final Deque<TransformFrame> transformStack = new ArrayDeque<>(Collections.singletonList(TransformFrame.IDENTITY));
 	private Region limit = null;
+	private BlockVector3 limitMin = null;
+	private BlockVector3 limitMax = null;
+	private long lastAccessedChunk = Long.MIN_VALUE;
 	private boolean canceled = false;
+	// the choice of each room chooser for each room, offset by one so that 0 means not chosen yet. Shared by all views
+	// of the cave, which may read it concurrently
+	private final Map<RoomChooser, int[]> roomChoices;
 
-	private CaveGenContext(EditSession session, CaveStyle style, long caveSeed) {
+	private CaveGenContext(EditSession session, @Nullable org.bukkit.World bukkitWorld, CaveStyle style, long caveSeed) {
 		this.session = session;
+		this.bulkWriter = new BulkBlockWriter(session);
+		this.bukkitWorld = bukkitWorld;
+		if (bukkitWorld != null && bukkitWorld.getGenerator() instanceof FullChunkGenerator) {
+			this.generatorBlock = ((FullChunkGenerator) bukkitWorld.getGenerator()).getBlock().toImmutableState();
+		} else {
+			this.generatorBlock = null;
+		}
 		this.style = style;
 		this.rand = new Random(caveSeed);
 		this.caveSeed = caveSeed;
-		this.blockStorage = new PackedBlockStorage(style.getBaseBlock().toImmutableState());
+		this.streamSeed = caveSeed;
+		this.blockStorage = new PackedBlockStorage(style.getBaseBlock().toImmutableState(), style::isTransparentBlock);
+		this.tile = null;
+		this.tileReader = null;
+		this.roomChoices = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Creates a view of the parent context with its own random stream. If tile is not null, the view writes into
+	 * that tile instead of the parent's world.
+	 */
+	private CaveGenContext(CaveGenContext parent, long streamSeed, @Nullable TileBuffer tile) {
+		this.session = parent.session;
+		this.bulkWriter = parent.bulkWriter;
+		this.bukkitWorld = parent.bukkitWorld;
+		this.generatorBlock = parent.generatorBlock;
+		this.style = parent.style;
+		this.rand = new Random(streamSeed);
+		this.caveSeed = parent.caveSeed;
+		this.streamSeed = streamSeed;
+		this.debug = parent.debug;
+		this.blockStorage = parent.blockStorage;
+		this.roomChoices = parent.roomChoices;
+		this.limit = parent.limit;
+		this.limitMin = parent.limitMin;
+		this.limitMax = parent.limitMax;
+		this.transformStack.push(parent.transformStack.getFirst());
+		if (tile != null) {
+			this.writeBehind = true;
+			this.tile = tile;
+		} else {
+			this.writeBehind = parent.writeBehind;
+			this.parallel = parent.parallel;
+			this.tile = parent.tile;
+			this.accessedChunks = parent.accessedChunks;
+		}
+		this.tileReader = this.tile == null ? null : blockStorage.newConcurrentReader();
 	}
 
 	public CaveGenContext outputAccessedChunksTo(Set<BlockVector2> chunks) {
 		this.accessedChunks = chunks;
+		this.lastAccessedChunk = Long.MIN_VALUE;
 		return this;
 	}
 
@@ -66,42 +150,316 @@ public class CaveGenContext implements AutoCloseable {
 		return debug;
 	}
 
+	/**
+	 * In write-behind mode, blocks are only written to memory during generation, and the final state of each changed
+	 * block is written to the world once when the context is closed.
+	 */
+	public CaveGenContext setWriteBehind(boolean writeBehind) {
+		this.writeBehind = writeBehind;
+		blockStorage.setTrackDirty(writeBehind);
+		return this;
+	}
+
+	/**
+	 * In parallel mode, carving and smoothing are split into tiles which are generated concurrently, each with its own
+	 * random number generator. Requires write-behind mode.
+	 */
+	public CaveGenContext setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+	public boolean isParallel() {
+		return parallel && writeBehind && tile == null;
+	}
+
+	/**
+	 * In pipelined mode, chunks are filled as soon as the layout is known, and chunks which can no longer be changed
+	 * by the painters are written to the world on a separate thread while the rest of the cave is being generated.
+	 * Blocks changed after that, e.g. by structures, are written again on close. Requires write-behind mode.
+	 */
+	public CaveGenContext setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+		return this;
+	}
+
+	public boolean isPipelined() {
+		return pipelined && writeBehind && tile == null;
+	}
+
+	/**
+	 * Sets a listener to be notified of every block written through this context, or removes it if null
+	 */
+	public void setWriteListener(@Nullable PackedBlockStorage.BlockConsumer writeListener) {
+		this.writeListener = writeListener;
+	}
+
+	private void submitToWriter(Runnable task) {
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "DescentIntoDarkness cave writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		writerTasks.add(writer.submit(task));
+	}
+
+	/**
+	 * Fills the given chunks with the base block on the writer thread
+	 */
+	public void prefillChunks(Collection<BlockVector2> chunks) {
+		List<BlockVector2> chunksToFill = new ArrayList<>();
+		for (BlockVector2 chunk : chunks) {
+			if (prefilledChunks.add(chunk)) {
+				chunksToFill.add(chunk);
+			}
+		}
+		if (!chunksToFill.isEmpty()) {
+			submitToWriter(() -> fillChunks(chunksToFill));
+		}
+	}
+
+	/**
+	 * Writes the changed blocks in the given chunk to the world on the writer thread
+	 */
+	public void sealChunk(BlockVector2 chunk) {
+		ChunkSnapshot snapshot = new ChunkSnapshot();
+		blockStorage.flushDirtyBlocks(chunk.getX(), chunk.getZ(), snapshot);
+		if (snapshot.size != 0) {
+			submitToWriter(() -> snapshot.writeTo(session));
+		}
+	}
+
+	private void awaitWriter() {
+		if (writer == null) {
+			return;
+		}
+		writer.shutdown();
+		try {
+			for (Future<?> task : writerTasks) {
+				task.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stopWriter();
+			session.close();
+			throw new RuntimeException("Interrupted while writing cave", e);
+		} catch (ExecutionException e) {
+			stopWriter();
+			session.close();
+			throw new RuntimeException("Failed to write cave", e.getCause());
+		}
+		writerTasks.clear();
+		writer = null;
+	}
+
+	/**
+	 * Cancels the pending writes and waits for the running one to finish, so that the session is never used by the
+	 * writer and the caller at the same time
+	 */
+	private void stopWriter() {
+		if (writer == null) {
+			return;
+		}
+		writer.shutdownNow();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (writer.awaitTermination(1, TimeUnit.SECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		writerTasks.clear();
+		writer = null;
+	}
+
+	/**
+	 * Creates a context which writes into the given tile instead of the block storage, and reads from the tile falling
+	 * back to the block storage. The block storage must not be modified while the fork is in use.
+	 */
+	CaveGenContext forkForTile(TileBuffer tile, RandomStreams.Stage stage, long index) {
+		return new CaveGenContext(this, RandomStreams.seed(streamSeed, stage, index), tile);
+	}
+
+	/**
+	 * Returns a view of this context which reads and writes the same blocks, but has its own random number generator
+	 * seeded from this context's stream, the given stage and index
+	 */
+	public CaveGenContext substream(RandomStreams.Stage stage, long index) {
+		return new CaveGenContext(this, RandomStreams.seed(streamSeed, stage, index), null);
+	}
+
+	/**
+	 * Writes the blocks of a fork created by {@link #forkForTile(TileBuffer, RandomStreams.Stage, long)} into this context
+	 */
+	void joinFork(CaveGenContext fork) {
+		accessedChunks.addAll(fork.accessedChunks);
+		assert fork.tile != null;
+		fork.tile.forEach(this::setBlockInWorld);
+	}
+
+	/**
+	 * Gets the choice the given chooser makes for the given room of this cave, choosing it the first time it's needed
+	 */
+	public int getRoomChoice(RoomChooser chooser, int roomIndex) {
+		int[] choices = roomChoices.get(chooser);
+		if (choices != null && roomIndex < choices.length && choices[roomIndex] != 0) {
+			return choices[roomIndex] - 1;
+		}
+		int choice = chooser.choose(caveSeed, roomIndex);
+		roomChoices.compute(chooser, (k, existing) -> {
+			int[] result = existing;
+			if (result == null || roomIndex >= result.length) {
+				int length = Math.max(roomIndex + 1, result == null ? 16 : result.length * 2);
+				result = result == null ? new int[length] : Arrays.copyOf(result, length);
+			}
+			result[roomIndex] = choice + 1;
+			return result;
+		});
+		return choice;
+	}
+
 	public CaveGenContext limit(Region limit) {
 		this.limit = limit;
+		if (limit instanceof CuboidRegion) {
+			this.limitMin = limit.getMinimumPoint();
+			this.limitMax = limit.getMaximumPoint();
+		} else {
+			this.limitMin = this.limitMax = null;
+		}
 		return this;
 	}
 
 	public static CaveGenContext create(World world, CaveStyle style, long caveSeed) {
 		EditSession session = WorldEdit.getInstance().newEditSession(world);
-		return new CaveGenContext(session, style, caveSeed);
+		return new CaveGenContext(session, world instanceof BukkitWorld ? BukkitAdapter.adapt(world) : null, style, caveSeed);
 	}
 
-	private void ensureChunkGenerated(BlockVector3 blockPos) {
-		BlockVector2 chunkPos = BlockVector2.at(blockPos.getX() >> 4, blockPos.getZ() >> 4);
-		if (accessedChunks.add(chunkPos)) {
+	private void ensureChunkGenerated(int x, int z) {
+		long chunkKey = (long) (x >> 4) << 32 | ((z >> 4) & 0xffffffffL);
+		if (chunkKey == lastAccessedChunk) {
+			return;
+		}
+		lastAccessedChunk = chunkKey;
+		BlockVector2 chunkPos = BlockVector2.at(x >> 4, z >> 4);
+		// in write-behind mode, chunks are filled at the end
+		if (accessedChunks.add(chunkPos) && !writeBehind) {
 			fillChunk(chunkPos);
 		}
 	}
 
 	private void fillChunk(BlockVector2 chunkPos) {
-		BlockVector3 from = BlockVector3.at(chunkPos.getX() * 16, 1, chunkPos.getZ() * 16);
-		BlockVector3 to = from.add(15, 253, 15);
-		fill(new CuboidRegion(from, to), style.getBaseBlock());
+		if (getUngeneratedChunks(Collections.singletonList(chunkPos)).isEmpty()) {
+			resetChunk(chunkPos, style.getBaseBlock().toImmutableState());
+		}
+	}
+
+	private void fillChunks(Collection<BlockVector2> chunks) {
+		Set<BlockVector2> ungeneratedChunks = getUngeneratedChunks(chunks);
+		BlockState baseBlock = style.getBaseBlock().toImmutableState();
+		int skipped = 0;
+		for (BlockVector2 chunk : chunks) {
+			if (ungeneratedChunks.contains(chunk)) {
+				// the world generator will fill this chunk with the base block for us
+				skipped++;
+			} else {
+				resetChunk(chunk, baseBlock);
+			}
+		}
+		if (debug) {
+			Bukkit.getLogger().log(Level.INFO, "Filled " + (chunks.size() - skipped) + " chunks, skipped " + skipped + " ungenerated chunks");
+		}
+	}
+
+	private Set<BlockVector2> getUngeneratedChunks(Collection<BlockVector2> chunks) {
+		if (bukkitWorld == null || generatorBlock == null || generatorBlock.getOrdinal() != style.getBaseBlock().toImmutableState().getOrdinal()) {
+			return Collections.emptySet();
+		}
+		Supplier<Set<BlockVector2>> query = () -> {
+			Set<BlockVector2> result = new HashSet<>();
+			for (BlockVector2 chunk : chunks) {
+				if (!bukkitWorld.isChunkGenerated(chunk.getX(), chunk.getZ())) {
+					result.add(chunk);
+				}
+			}
+			return result;
+		};
+		return Bukkit.isPrimaryThread() ? query.get() : DescentIntoDarkness.instance.supplySyncNow(query);
+	}
+
+	/**
+	 * Sets every block in the chunk to the base block in one bulk write. In write-behind mode, the changed blocks are
+	 * written over it afterwards.
+	 */
+	private void resetChunk(BlockVector2 chunkPos, BlockState baseBlock) {
+		int minX = chunkPos.getX() << 4;
+		int minZ = chunkPos.getZ() << 4;
+		bulkWriter.fill(minX, 1, minZ, minX + 15, 254, minZ + 15, baseBlock);
+	}
+
+	private boolean isInLimit(int x, int y, int z) {
+		if (limit == null) {
+			return true;
+		}
+		if (limitMin != null) {
+			return x >= limitMin.getX() && x <= limitMax.getX()
+					&& y >= limitMin.getY() && y <= limitMax.getY()
+					&& z >= limitMin.getZ() && z <= limitMax.getZ();
+		}
+		return limit.contains(BlockVector3.at(x, y, z));
 	}
 
 	public boolean setBlock(BlockVector3 pos, BlockStateHolder<?> block) throws MaxChangedBlocksException {
-		block = Util.toRealImmutable(block);
-		pos = getInverseLocationTransform().apply(pos.toVector3()).toBlockPoint();
-		block = Util.transformBlock(block, getInverseBlockTransform());
-		if (pos.getBlockY() <= 0 || pos.getBlockY() >= 255) {
+		return setBlock(pos.getX(), pos.getY(), pos.getZ(), block);
+	}
+
+	public boolean setBlock(int x, int y, int z, BlockStateHolder<?> block) throws MaxChangedBlocksException {
+		TransformFrame frame = transformStack.getFirst();
+		BlockState state = Util.toRealImmutable(block).toImmutableState();
+		if (frame.isIdentity) {
+			return setBlockInWorld(x, y, z, state);
+		}
+		state = Util.transformBlock(state, frame.inverseBlockTransform, frame.inverseBlockTransformId);
+		int[] m = frame.inverseLocationMatrix;
+		if (m == null) {
+			BlockVector3 pos = frame.inverseLocationTransform.apply(Vector3.at(x, y, z)).toBlockPoint();
+			return setBlockInWorld(pos.getX(), pos.getY(), pos.getZ(), state);
+		}
+		return setBlockInWorld(
+				m[0] * x + m[1] * y + m[2] * z + m[3],
+				m[4] * x + m[5] * y + m[6] * z + m[7],
+				m[8] * x + m[9] * y + m[10] * z + m[11],
+				state
+		);
+	}
+
+	private boolean setBlockInWorld(int x, int y, int z, BlockState block) {
+		if (y <= 0 || y >= 255) {
 			return false;
 		}
-		if (limit != null && !limit.contains(pos)) {
+		if (!isInLimit(x, y, z)) {
 			return false;
 		}
-		ensureChunkGenerated(pos);
-		if (session.setBlock(pos, block)) {
-			blockStorage.setBlock(pos, block.toImmutableState());
+		if (writeListener != null) {
+			writeListener.accept(x, y, z, block);
+		}
+		ensureChunkGenerated(x, z);
+		if (tile != null) {
+			return tile.setBlock(x, y, z, block);
+		}
+		if (writeBehind) {
+			blockStorage.setBlock(x, y, z, block);
+			return true;
+		}
+		if (session.setBlock(x, y, z, block)) {
+			blockStorage.setBlock(x, y, z, block);
 			return true;
 		} else {
 			return false;
@@ -109,71 +467,181 @@ public class CaveGenContext implements AutoCloseable {
 	}
 
 	public BlockState getBlock(BlockVector3 pos) {
-		pos = getInverseLocationTransform().apply(pos.toVector3()).toBlockPoint();
-		if (pos.getBlockY() < 0 || pos.getBlockY() > 255) {
+		return getBlock(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	public BlockState getBlock(int x, int y, int z) {
+		TransformFrame frame = transformStack.getFirst();
+		if (frame.isIdentity) {
+			return getBlockInWorld(x, y, z, null, 0);
+		}
+		int[] m = frame.inverseLocationMatrix;
+		if (m == null) {
+			BlockVector3 pos = frame.inverseLocationTransform.apply(Vector3.at(x, y, z)).toBlockPoint();
+			return getBlockInWorld(pos.getX(), pos.getY(), pos.getZ(), frame.blockTransform, frame.blockTransformId);
+		}
+		return getBlockInWorld(
+				m[0] * x + m[1] * y + m[2] * z + m[3],
+				m[4] * x + m[5] * y + m[6] * z + m[7],
+				m[8] * x + m[9] * y + m[10] * z + m[11],
+				frame.blockTransform,
+				frame.blockTransformId
+		);
+	}
+
+	public boolean isTransparent(BlockVector3 pos) {
+		return isTransparent(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	/**
+	 * Gets whether the block at the given position is transparent in this cave style
+	 */
+	public boolean isTransparent(int x, int y, int z) {
+		if (!transformStack.getFirst().isIdentity || y <= 0 || y >= 255 || !isInLimit(x, y, z)) {
+			return blockStorage.isTransparentBlock(getBlock(x, y, z));
+		}
+		ensureChunkGenerated(x, z);
+		if (tile != null) {
+			BlockState block = tile.getBlock(x, y, z);
+			if (block != null) {
+				return blockStorage.isTransparentBlock(block);
+			}
+		}
+		return tileReader != null ? tileReader.isTransparent(x, y, z) : blockStorage.isTransparent(x, y, z);
+	}
+
+	/**
+	 * Builds the surface masks of the cave, which the surface queries use from then on instead of probing the
+	 * neighbouring blocks. Should be called once the shape of the cave is mostly final.
+	 */
+	public void buildSurfaceMasks() {
+		blockStorage.buildSurfaceMasks();
+	}
+
+	// returns the surface masks if they hold the answer for the given block and its neighbours
+	private @Nullable SurfaceMasks getSurfaceMasks(int x, int y, int z) {
+		SurfaceMasks masks = blockStorage.getSurfaceMasks();
+		if (masks == null || tile != null || !transformStack.getFirst().isIdentity || y <= 1 || y >= 254) {
+			return null;
+		}
+		if (limit != null) {
+			if (limitMin == null) {
+				return null;
+			}
+			if (x <= limitMin.getX() || x >= limitMax.getX()
+					|| y <= limitMin.getY() || y >= limitMax.getY()
+					|| z <= limitMin.getZ() || z >= limitMax.getZ()) {
+				return null;
+			}
+		}
+		return masks;
+	}
+
+	/**
+	 * Gets whether the block at the given position is solid, with a solid block below it and a transparent block above it
+	 */
+	public boolean isFloor(int x, int y, int z) {
+		SurfaceMasks masks = getSurfaceMasks(x, y, z);
+		if (masks == null) {
+			return !isTransparent(x, y, z) && !isTransparent(x, y - 1, z) && isTransparent(x, y + 1, z);
+		}
+		ensureChunkGenerated(x, z);
+		return masks.isFloor(x, y, z);
+	}
+
+	/**
+	 * Gets whether the block at the given position is solid, with a transparent block below it and a solid block above it
+	 */
+	public boolean isCeiling(int x, int y, int z) {
+		SurfaceMasks masks = getSurfaceMasks(x, y, z);
+		if (masks == null) {
+			return !isTransparent(x, y, z) && isTransparent(x, y - 1, z) && !isTransparent(x, y + 1, z);
+		}
+		ensureChunkGenerated(x, z);
+		return masks.isCeiling(x, y, z);
+	}
+
+	public boolean isExposed(BlockVector3 pos, Direction facing) {
+		return isExposed(pos.getX(), pos.getY(), pos.getZ(), facing);
+	}
+
+	/**
+	 * Gets whether the block at the given position is solid and the block next to it in the given direction is
+	 * transparent
+	 */
+	public boolean isExposed(int x, int y, int z, Direction facing) {
+		BlockVector3 offset = facing.toBlockVector();
+		SurfaceMasks masks = getSurfaceMasks(x, y, z);
+		if (masks == null) {
+			return !isTransparent(x, y, z) && isTransparent(x + offset.getX(), y + offset.getY(), z + offset.getZ());
+		}
+		ensureChunkGenerated(x, z);
+		ensureChunkGenerated(x + offset.getX(), z + offset.getZ());
+		return masks.isExposed(x, y, z, facing);
+	}
+
+	private BlockState getBlockInWorld(int x, int y, int z, @Nullable Transform blockTransform, int blockTransformId) {
+		if (y < 0 || y > 255) {
 			return Util.requireDefaultState(BlockTypes.AIR);
 		}
-		if (pos.getBlockY() == 0 || pos.getBlockY() == 255) {
+		if (y == 0 || y == 255) {
 			return Util.requireDefaultState(BlockTypes.BEDROCK);
 		}
-		if (limit != null && !limit.contains(pos)) {
+		if (!isInLimit(x, y, z)) {
 			return style.getBaseBlock().toImmutableState();
 		}
-		ensureChunkGenerated(pos);
-		BlockState block = blockStorage.getBlock(pos);
-		block = (BlockState) Util.transformBlock(block, getBlockTransform());
+		ensureChunkGenerated(x, z);
+		BlockState block = tile == null ? null : tile.getBlock(x, y, z);
+		if (block == null) {
+			block = tileReader != null ? tileReader.getBlock(x, y, z) : blockStorage.getBlock(x, y, z);
+		}
+		if (blockTransform != null) {
+			block = Util.transformBlock(block, blockTransform, blockTransformId);
+		}
 		return block;
 	}
 
 	public void pushTransform(Transform blockTransform, Transform locationTransform) {
+		TransformFrame current = transformStack.getFirst();
 		blockTransform = Util.toDirectionTransform(blockTransform);
-		blockTransformStack.push(getBlockTransform().combine(blockTransform));
-		inverseBlockTransformStack.push(blockTransform.inverse().combine(getInverseBlockTransform()));
-		locationTransformStack.push(getLocationTransform().combine(locationTransform));
-		inverseLocationTransformStack.push(locationTransform.inverse().combine(getInverseLocationTransform()));
+		transformStack.push(new TransformFrame(
+				current.blockTransform.combine(blockTransform),
+				blockTransform.inverse().combine(current.inverseBlockTransform),
+				current.locationTransform.combine(locationTransform),
+				locationTransform.inverse().combine(current.inverseLocationTransform)
+		));
 	}
 
 	public void popTransform() {
-		blockTransformStack.pop();
-		inverseBlockTransformStack.pop();
-		locationTransformStack.pop();
-		inverseLocationTransformStack.pop();
+		transformStack.pop();
 	}
 
 	/**
 	 * Gets the current world space -> local space block transform
 	 */
 	public Transform getBlockTransform() {
-		Transform transform = blockTransformStack.peek();
-		assert transform != null;
-		return transform;
+		return transformStack.getFirst().blockTransform;
 	}
 
 	/**
 	 * Gets the current local space -> world space block transform
 	 */
 	public Transform getInverseBlockTransform() {
-		Transform transform = inverseBlockTransformStack.peek();
-		assert transform != null;
-		return transform;
+		return transformStack.getFirst().inverseBlockTransform;
 	}
 
 	/**
 	 * Gets the current world space -> local space location transform
 	 */
 	public Transform getLocationTransform() {
-		Transform transform = locationTransformStack.peek();
-		assert transform != null;
-		return transform;
+		return transformStack.getFirst().locationTransform;
 	}
 
 	/**
 	 * Gets the current local space -> world space location transform
 	 */
 	public Transform getInverseLocationTransform() {
-		Transform transform = inverseLocationTransformStack.peek();
-		assert transform != null;
-		return transform;
+		return transformStack.getFirst().inverseLocationTransform;
 	}
 
 	public Extent asExtent() {
@@ -185,7 +653,7 @@ public class CaveGenContext implements AutoCloseable {
 
 			@Override
 			public BlockState getBlock(int x, int y, int z) {
-				return CaveGenContext.this.getBlock(BlockVector3.at(x, y, z));
+				return CaveGenContext.this.getBlock(x, y, z);
 			}
 
 			@Override
@@ -195,7 +663,7 @@ public class CaveGenContext implements AutoCloseable {
 
 			@Override
 			public BaseBlock getFullBlock(int x, int y, int z) {
-				return CaveGenContext.this.getBlock(BlockVector3.at(x, y, z)).toBaseBlock();
+				return CaveGenContext.this.getBlock(x, y, z).toBaseBlock();
 			}
 
 			@Override
@@ -205,7 +673,7 @@ public class CaveGenContext implements AutoCloseable {
 
 			@Override
 			public <T extends BlockStateHolder<T>> boolean setBlock(int x, int y, int z, T block) throws WorldEditException {
-				return CaveGenContext.this.setBlock(BlockVector3.at(x, y, z), block);
+				return CaveGenContext.this.setBlock(x, y, z, block);
 			}
 		};
 	}
@@ -219,66 +687,129 @@ public class CaveGenContext implements AutoCloseable {
 	@Override
 	public void close() {
 		if (canceled) {
+			stopWriter();
 			session.close();
 			return;
 		}
 
+		awaitWriter();
+
+		if (debug) {
+			Bukkit.getLogger().log(Level.INFO, "Block storage: " + blockStorage.describeStatistics());
+		}
+
 		// fill chunks neighboring accessed chunks
 		Bukkit.getLogger().log(Level.INFO, "Filling neighbor chunks...");
 		Set<BlockVector2> filledChunks = new HashSet<>(accessedChunks);
+		List<BlockVector2> chunksToFill = new ArrayList<>();
+		if (writeBehind) {
+			for (BlockVector2 accessedChunk : accessedChunks) {
+				if (!prefilledChunks.contains(accessedChunk)) {
+					chunksToFill.add(accessedChunk);
+				}
+			}
+		}
 		for (BlockVector2 accessedChunk : accessedChunks) {
 			for (int dx = -1; dx <= 1; dx++) {
 				for (int dz = -1; dz <= 1; dz++) {
 					BlockVector2 neighbor = accessedChunk.add(dx, dz);
-					if (filledChunks.add(neighbor)) {
-						fillChunk(neighbor);
+					if (filledChunks.add(neighbor) && !prefilledChunks.contains(neighbor)) {
+						chunksToFill.add(neighbor);
 					}
 				}
 			}
 		}
+		fillChunks(chunksToFill);
+
+		if (writeBehind) {
+			Bukkit.getLogger().log(Level.INFO, "Writing " + blockStorage.getDirtySectionCount() + " changed sections...");
+			blockStorage.flushDirtyBlocks(session::setBlock);
+		}
 
 		// bedrock wall around all generated chunks
 		Bukkit.getLogger().log(Level.INFO, "Creating bedrock walls...");
+		BlockState bedrock = Util.requireDefaultState(BlockTypes.BEDROCK);
 		for (BlockVector2 filledChunk : filledChunks) {
-			BlockVector2 north = filledChunk.add(0, -1);
-			if (!filledChunks.contains(north)) {
-				fill(new CuboidRegion(
-						BlockVector3.at(filledChunk.getX() * 16, 1, filledChunk.getZ() * 16 - 1),
-						BlockVector3.at(filledChunk.getX() * 16 + 15, 254, filledChunk.getZ() * 16 - 1)
-				), Util.requireDefaultState(BlockTypes.BEDROCK));
+			int minX = filledChunk.getX() << 4;
+			int minZ = filledChunk.getZ() << 4;
+			if (!filledChunks.contains(filledChunk.add(0, -1))) {
+				bulkWriter.fill(minX, 1, minZ - 1, minX + 15, 254, minZ - 1, bedrock);
 			}
-			BlockVector2 east = filledChunk.add(1, 0);
-			if (!filledChunks.contains(east)) {
-				fill(new CuboidRegion(
-						BlockVector3.at(filledChunk.getX() * 16 + 16, 1, filledChunk.getZ() * 16),
-						BlockVector3.at(filledChunk.getX() * 16 + 16, 254, filledChunk.getZ() * 16 + 15)
-				), Util.requireDefaultState(BlockTypes.BEDROCK));
+			if (!filledChunks.contains(filledChunk.add(1, 0))) {
+				bulkWriter.fill(minX + 16, 1, minZ, minX + 16, 254, minZ + 15, bedrock);
 			}
-			BlockVector2 south = filledChunk.add(0, 1);
-			if (!filledChunks.contains(south)) {
-				fill(new CuboidRegion(
-						BlockVector3.at(filledChunk.getX() * 16, 1, filledChunk.getZ() * 16 + 16),
-						BlockVector3.at(filledChunk.getX() * 16 + 15, 254, filledChunk.getZ() * 16 + 16)
-				), Util.requireDefaultState(BlockTypes.BEDROCK));
+			if (!filledChunks.contains(filledChunk.add(0, 1))) {
+				bulkWriter.fill(minX, 1, minZ + 16, minX + 15, 254, minZ + 16, bedrock);
 			}
-			BlockVector2 west = filledChunk.add(-1, 0);
-			if (!filledChunks.contains(west)) {
-				fill(new CuboidRegion(
-						BlockVector3.at(filledChunk.getX() * 16 - 1, 1, filledChunk.getZ() * 16),
-						BlockVector3.at(filledChunk.getX() * 16 - 1, 254, filledChunk.getZ() * 16 + 15)
-				), Util.requireDefaultState(BlockTypes.BEDROCK));
+			if (!filledChunks.contains(filledChunk.add(-1, 0))) {
+				bulkWriter.fill(minX - 1, 1, minZ, minX - 1, 254, minZ + 15, bedrock);
 			}
 		}
 
+		if (debug) {
+			Bukkit.getLogger().log(Level.INFO, "Wrote " + bulkWriter.getBlocksWritten() + " fill and wall blocks in " + bulkWriter.getMillisSpent() + "ms");
+		}
+
 		Bukkit.getLogger().log(Level.INFO, "Cave finished generating");
 
 		session.close();
 	}
 
-	private void fill(Region region, BlockStateHolder<?> block) {
-		// for some reason, setBlocks is too slow here, so we use a loop
-		for (BlockVector3 pos : region) {
-			session.setBlock(pos, block);
+	private static final class ChunkSnapshot implements PackedBlockStorage.BlockConsumer {
+		private int[] coords = new int[3 * 256];
+		private BlockState[] blocks = new BlockState[256];
+		private int size;
+
+		@Override
+		public void accept(int x, int y, int z, BlockState block) {
+			if (size == blocks.length) {
+				coords = Arrays.copyOf(coords, coords.length * 2);
+				blocks = Arrays.copyOf(blocks, blocks.length * 2);
+			}
+			coords[size * 3] = x;
+			coords[size * 3 + 1] = y;
+			coords[size * 3 + 2] = z;
+			blocks[size++] = block;
+		}
+
+		private void writeTo(EditSession session) {
+			for (int i = 0; i < size; i++) {
+				session.setBlock(coords[i * 3], coords[i * 3 + 1], coords[i * 3 + 2], blocks[i]);
+			}
+		}
+	}
+
+	/**
+	 * Makes a choice per room that only depends on the cave seed and the room, see {@link #getRoomChoice}
+	 */
+	@FunctionalInterface
+	public interface RoomChooser {
+		int choose(long caveSeed, int roomIndex);
+	}
+
+	private static final class TransformFrame {
+		private static final TransformFrame IDENTITY = new TransformFrame(new Identity(), new Identity(), new Identity(), new Identity());
+
+		private final Transform blockTransform;
+		private final Transform inverseBlockTransform;
+		private final Transform locationTransform;
+		private final Transform inverseLocationTransform;
+		// the inverse location transform as an integer matrix, or null if it doesn't have integer coefficients
+		private final @Nullable int[] inverseLocationMatrix;
+		private final int blockTransformId;
+		private final int inverseBlockTransformId;
+		private final boolean isIdentity;
+
+		private TransformFrame(Transform blockTransform, Transform inverseBlockTransform, Transform locationTransform, Transform inverseLocationTransform) {
+			this.blockTransform = blockTransform;
+			this.inverseBlockTransform = inverseBlockTransform;
+			this.locationTransform = locationTransform;
+			this.inverseLocationTransform = inverseLocationTransform;
+			this.inverseLocationMatrix = Util.toIntegerMatrix(inverseLocationTransform);
+			this.blockTransformId = Util.getAxisAlignedTransformId(blockTransform);
+			this.inverseBlockTransformId = Util.getAxisAlignedTransformId(inverseBlockTransform);
+			this.isIdentity = blockTransform.isIdentity() && inverseBlockTransform.isIdentity()
+					&& locationTransform.isIdentity() && inverseLocationTransform.isIdentity();
 		}
 	}
 }
@@ -41,12 +41,21 @@ public class CaveGenerator {
 			startingDir = Util.rotateAroundY(startingDir, ctx.rand.nextDouble() * 2 * Math.PI);
 		}
 		String caveString = generateBranch(ctx, size, pos, length, 'C', true, startingDir, centroids, roomLocations);
-		PostProcessor.postProcess(ctx, centroids, roomLocations);
+		ChunkSealer sealer = null;
+		if (ctx.isPipelined()) {
+			// the layout is known now, so start filling the chunks it covers while we carve
+			sealer = new ChunkSealer(centroids);
+			ctx.prefillChunks(sealer.getChunks());
+		}
+		if (ctx.isParallel()) {
+			TileScheduler.carve(ctx, centroids);
+		}
+		PostProcessor.postProcess(ctx, centroids, roomLocations, sealer);
 		return caveString;
 	}
 
 	public static String generateBranch(CaveGenContext ctx, int size, Vector3 pos, int length, char startingSymbol, boolean moreBranches, Vector3 dir, List<Centroid> centroids, List<List<Vector3>> roomLocations) throws WorldEditException {
-		LayoutGenerator.Layout layout = LayoutGenerator.generateCave(ctx, length, startingSymbol);
+		LayoutGenerator.Layout layout = LayoutGenerator.generateCave(ctx.substream(RandomStreams.Stage.LAYOUT, 0), length, startingSymbol);
 
 		if(!moreBranches) {
 			Room simpleRoom = ctx.style.getRooms().stream().filter(room -> room instanceof SimpleRoom).findFirst().orElse(null);
@@ -0,0 +1,62 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import com.sk89q.worldedit.math.BlockVector2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of which chunks still have centroids left to paint. Once every centroid that can affect a chunk has been
+ * painted, the chunk is sealed and its blocks can be written to the world while the rest of the cave is generated.
+ */
+public class ChunkSealer {
+	// painters work in a box reaching centroid.size + 4 blocks from each centroid
+	private static final int EXTRA_RADIUS = 4;
+
+	private final List<List<BlockVector2>> chunksByCentroid = new ArrayList<>();
+	private final Map<BlockVector2, Integer> remainingCentroids = new HashMap<>();
+	private final Set<BlockVector2> chunks = new LinkedHashSet<>();
+
+	public ChunkSealer(List<Centroid> centroids) {
+		for (Centroid centroid : centroids) {
+			int r = centroid.size + EXTRA_RADIUS;
+			int x = centroid.pos.getBlockX();
+			int z = centroid.pos.getBlockZ();
+			List<BlockVector2> centroidChunks = new ArrayList<>();
+			for (int chunkX = (x - r) >> 4; chunkX <= (x + r) >> 4; chunkX++) {
+				for (int chunkZ = (z - r) >> 4; chunkZ <= (z + r) >> 4; chunkZ++) {
+					BlockVector2 chunk = BlockVector2.at(chunkX, chunkZ);
+					centroidChunks.add(chunk);
+					remainingCentroids.merge(chunk, 1, Integer::sum);
+					chunks.add(chunk);
+				}
+			}
+			chunksByCentroid.add(centroidChunks);
+		}
+	}
+
+	/**
+	 * Gets all the chunks the centroids can affect
+	 */
+	public Set<BlockVector2> getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * Marks the centroid with the given index as painted and returns the chunks that have become sealed as a result
+	 */
+	public List<BlockVector2> centroidDone(int centroidIndex) {
+		List<BlockVector2> sealed = new ArrayList<>();
+		for (BlockVector2 chunk : chunksByCentroid.get(centroidIndex)) {
+			int remaining = remainingCentroids.merge(chunk, -1, Integer::sum);
+			if (remaining == 0) {
+				sealed.add(chunk);
+			}
+		}
+		return sealed;
+	}
+}
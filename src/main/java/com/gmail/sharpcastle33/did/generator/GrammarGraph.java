@@ -151,11 +151,13 @@ public class GrammarGraph {
 		// A list of strings that this character may be replaced with, each with a weight attached
 		private final List<Pair<Integer, String>> entries;
 		private final List<String> tags;
+		private final TagSet tagSet;
 		private final int totalWeight;
 
 		public RuleSet(List<Pair<Integer, String>> entries, List<String> tags) {
 			this.entries = entries;
 			this.tags = tags;
+			this.tagSet = TagSet.of(tags);
 			int totalWeight = 0;
 			for (Pair<Integer, String> entry : entries) {
 				totalWeight += entry.getLeft();
@@ -171,6 +173,10 @@ public class GrammarGraph {
 			return tags;
 		}
 
+		public TagSet getTagSet() {
+			return tagSet;
+		}
+
 		public String getRandomSubstitution(CaveGenContext ctx) {
 			int randVal = ctx.rand.nextInt(totalWeight);
 			for (Pair<Integer, String> entry : entries) {
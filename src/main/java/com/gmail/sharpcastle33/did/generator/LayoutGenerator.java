@@ -4,6 +4,7 @@ import com.gmail.sharpcastle33.did.generator.room.Room;
 import org.bukkit.Bukkit;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
@@ -25,8 +26,8 @@ public class LayoutGenerator {
 		}
 
 		StringBuilder cave = new StringBuilder(String.valueOf(startingSymbol));
-		List<List<String>> tags = new ArrayList<>();
-		tags.add(new ArrayList<>());
+		List<TagSet> tags = new ArrayList<>();
+		tags.add(TagSet.EMPTY);
 
 		boolean needsMoreSubstitution = grammar.hasRuleSet(startingSymbol);
 		while (needsMoreSubstitution) {
@@ -37,13 +38,8 @@ public class LayoutGenerator {
 					GrammarGraph.RuleSet ruleSet = grammar.getRuleSet(symbol);
 					String substitution = ruleSet.getRandomSubstitution(ctx);
 					cave.replace(i, i + 1, substitution);
-					List<String> prevTags = tags.remove(i);
-					prevTags.addAll(ruleSet.getTags());
-					List<List<String>> newTags = new ArrayList<>(substitution.length());
-					for (int j = 0; j < substitution.length(); j++) {
-						newTags.add(new ArrayList<>(prevTags));
-					}
-					tags.addAll(i, newTags);
+					TagSet newTags = tags.remove(i).union(ruleSet.getTagSet());
+					tags.addAll(i, Collections.nCopies(substitution.length(), newTags));
 					needsMoreSubstitution = true;
 				}
 			}
@@ -71,9 +67,9 @@ public class LayoutGenerator {
 		public static final Layout EMPTY = new Layout("", new ArrayList<>());
 
 		private String value;
-		private final List<List<String>> tags;
+		private final List<TagSet> tags;
 
-		public Layout(String value, List<List<String>> tags) {
+		public Layout(String value, List<TagSet> tags) {
 			this.value = value;
 			this.tags = tags;
 		}
@@ -86,7 +82,7 @@ public class LayoutGenerator {
 			this.value = value;
 		}
 
-		public List<List<String>> getTags() {
+		public List<TagSet> getTags() {
 			return tags;
 		}
 
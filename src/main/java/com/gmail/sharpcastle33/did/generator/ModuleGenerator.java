@@ -33,18 +33,23 @@ public class ModuleGenerator {
 		Vector3 location = start;
 		for (int i = 0; i < cave.length(); i++) {
 			Room room = rooms.get(cave.charAt(i));
-			List<String> tags = new ArrayList<>(layout.getTags().get(i));
-			tags.addAll(room.getTags());
+			TagSet tags = layout.getTags().get(i).union(room.getTagSet());
 			int roomIndex = centroids.isEmpty() ? 0 : centroids.get(centroids.size() - 1).roomIndex + 1;
 			RoomData roomData = new RoomData(location, dir, caveRadius, tags, roomLocations, roomIndex);
-			Object[] userData = room.createUserData(ctx, roomData);
-			room.addCentroids(ctx, roomData, userData, centroids);
-			dir = room.adjustDirection(ctx, roomData, userData);
+			CaveGenContext roomCtx = ctx.substream(RandomStreams.Stage.ROOM, i);
+			Object[] userData = room.createUserData(roomCtx, roomData);
+			room.addCentroids(roomCtx, roomData, userData, centroids);
+			dir = room.adjustDirection(roomCtx, roomData, userData);
 			roomData = roomData.withDirection(dir);
-			location = room.adjustLocation(ctx, roomData, userData);
+			location = room.adjustLocation(roomCtx, roomData, userData);
 			theseRoomLocations.add(location);
 		}
 
+		if (ctx.isParallel()) {
+			// carved in tiles once the whole layout is known
+			return;
+		}
+
 		int roomStart = 0;
 		while (roomStart < centroids.size()) {
 			int roomIndex = centroids.get(roomStart).roomIndex;
@@ -57,8 +62,8 @@ public class ModuleGenerator {
 			List<Centroid> roomCentroids = centroids.subList(roomStart, roomEnd);
 			int minRoomY = roomCentroids.stream().mapToInt(centroid -> centroid.pos.getBlockY() - centroid.size).min().orElse(0);
 			int maxRoomY = roomCentroids.stream().mapToInt(centroid -> centroid.pos.getBlockY() + centroid.size).max().orElse(255);
-			for (Centroid centroid : roomCentroids) {
-				deleteCentroid(ctx, centroid, minRoomY, maxRoomY);
+			for (int i = roomStart; i < roomEnd; i++) {
+				deleteCentroid(ctx.substream(RandomStreams.Stage.CARVE, i), centroids.get(i), minRoomY, maxRoomY);
 			}
 
 			roomStart = roomEnd;
@@ -66,20 +71,31 @@ public class ModuleGenerator {
 	}
 
 	private static void deleteCentroid(CaveGenContext ctx, Centroid centroid, int minRoomY, int maxRoomY) {
+		int x = centroid.pos.getBlockX();
+		int z = centroid.pos.getBlockZ();
+		int r = centroid.size;
+		deleteCentroid(ctx, centroid, minRoomY, maxRoomY, x - r, x + r, z - r, z + r);
+	}
+
+	/**
+	 * Carves the part of the centroid between the given x and z bounds
+	 */
+	static void deleteCentroid(CaveGenContext ctx, Centroid centroid, int minRoomY, int maxRoomY, int minX, int maxX, int minZ, int maxZ) {
 		int x = centroid.pos.getBlockX();
 		int y = centroid.pos.getBlockY();
 		int z = centroid.pos.getBlockZ();
 		int r = centroid.size;
+		SphereOffsets offsets = SphereOffsets.get(SphereOffsets.Shape.CARVE, r);
+
+		BlockProvider[] airBlocks = ctx.style.getAirBlocks(centroid, minRoomY, maxRoomY, y - r, y + r);
 
 		for(int ty = -r; ty <= r; ty++) {
-			BlockProvider airBlock = ctx.style.getAirBlock(ty + y, centroid, minRoomY, maxRoomY);
-			for(int tx = -r; tx <= r; tx++){
-				for(int tz = -r; tz <= r; tz++){
-					if(tx * tx  +  ty * ty  +  tz * tz <= r * r){
-						if (((tx != 0 || ty != 0) && (tx != 0 || tz != 0) && (ty != 0 || tz != 0)) || (Math.abs(tx + ty + tz) != r)) {
-							ctx.setBlock(BlockVector3.at(tx + x, ty + y, tz + z), airBlock.get(ctx, centroid));
-						}
-					}
+			BlockProvider airBlock = airBlocks[ty + r];
+			for (int i = offsets.indexOfY(ty), end = offsets.indexOfY(ty + 1); i < end; i++) {
+				int bx = offsets.getX(i) + x;
+				int bz = offsets.getZ(i) + z;
+				if (bx >= minX && bx <= maxX && bz >= minZ && bz <= maxZ) {
+					ctx.setBlock(bx, ty + y, bz, airBlock.get(ctx, centroid));
 				}
 			}
 		}
@@ -98,24 +114,20 @@ public class ModuleGenerator {
 		int z = loc.getBlockZ();
 		int count = 0;
 
-		for(int tx = -radius; tx< radius +1; tx++){
-			for(int ty = -radius; ty< radius +1; ty++){
-				for(int tz = -radius; tz< radius +1; tz++){
-					if(tx * tx  +  ty * ty  +  tz * tz <= (radius - 2) * (radius - 2)) {
-						if(ty+y > 0) {
-							BlockVector3 pos = BlockVector3.at(tx+x, ty+y, tz+z);
-							BlockState block = ctx.getBlock(pos);
-							if(oldBlocks.test(block)) {
-								if(((tx == 0 && ty == 0) || (tx == 0 && tz == 0) || (ty == 0 && tz == 0)) && (Math.abs(tx+ty+tz) == radius - 2)) {
-									if(ctx.rand.nextBoolean())
-										continue;
-								}
-								ctx.setBlock(pos, ore.get(ctx, centroid));
-								count++;
-							}
-
-						}
+		SphereOffsets offsets = SphereOffsets.get(SphereOffsets.Shape.ORE, radius);
+		for (int i = 0; i < offsets.size(); i++) {
+			int bx = offsets.getX(i) + x;
+			int by = offsets.getY(i) + y;
+			int bz = offsets.getZ(i) + z;
+			if(by > 0) {
+				BlockState block = ctx.getBlock(bx, by, bz);
+				if(oldBlocks.test(block)) {
+					if(offsets.isTip(i)) {
+						if(ctx.rand.nextBoolean())
+							continue;
 					}
+					ctx.setBlock(bx, by, bz, ore.get(ctx, centroid));
+					count++;
 				}
 			}
 		}
@@ -2,83 +2,418 @@ package com.gmail.sharpcastle33.did.generator;
 
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.function.Predicate;
 
+/**
+ * Stores the blocks of a cave in memory. Each 16x16x16 section has its own local palette, which grows
+ * independently of the other sections. Sections with very many distinct block states store raw block state
+ * ordinals instead. Alongside the blocks, each section keeps one bit per block for whether it is transparent.
+ */
 public class PackedBlockStorage {
-	private final Map<BlockState, Integer> palette = new HashMap<>();
-	private final List<BlockState> inversePalette = new ArrayList<>();
-	private int bitsPerBlock = 4;
-	private int maxNumBlocks = 16;
-	private int blocksPerWord = 16;
+	private static final byte UNKNOWN = 0;
+	private static final byte OPAQUE = 1;
+	private static final byte TRANSPARENT = 2;
+	private static final long[] ALL_TRANSPARENT = filled(-1L);
+	private static final long[] ALL_OPAQUE = filled(0L);
+
 	private final BlockState defaultBlock;
-	private final Map<BlockVector3, long[]> subchunks = new HashMap<>();
+	private final Predicate<? super BlockState> transparentBlocks;
+	// the result of the transparency predicate for each block state ordinal, computed lazily. Concurrent readers may
+	// both fill in the same entry, but always with the same value
+	private final byte[] transparency = new byte[BlockTypesCache.states.length];
+	private final boolean defaultTransparent;
+	private final SectionTable<Section> sections = new SectionTable<>();
+	private boolean trackDirty;
+	private @Nullable SurfaceMasks surfaceMasks;
+	// most accesses are spatially coherent, so remember the last section we looked up
+	private Section lastSection;
 
-	public PackedBlockStorage(BlockState defaultBlock) {
+	public PackedBlockStorage(BlockState defaultBlock, Predicate<? super BlockState> transparentBlocks) {
 		this.defaultBlock = defaultBlock;
+		this.transparentBlocks = transparentBlocks;
+		this.defaultTransparent = isTransparentBlock(defaultBlock);
 	}
 
-	private static BlockVector3 subchunkPos(BlockVector3 pos) {
-		return BlockVector3.at(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
+	private static long[] filled(long value) {
+		long[] bits = new long[4096 / 64];
+		Arrays.fill(bits, value);
+		return bits;
 	}
 
-	public BlockState getBlock(BlockVector3 pos) {
-		long[] packedArray = subchunks.get(subchunkPos(pos));
-		if (packedArray == null) {
-			return defaultBlock;
+	/**
+	 * Sets whether to record which blocks have been written since the last {@link #flushDirtyBlocks(BlockConsumer)}
+	 */
+	public void setTrackDirty(boolean trackDirty) {
+		this.trackDirty = trackDirty;
+	}
+
+	private Section getSection(int x, int y, int z) {
+		long key = SectionTable.keyOfBlock(x, y, z);
+		Section section = lastSection;
+		if (section != null && section.key == key) {
+			return section;
+		}
+		section = sections.get(key);
+		if (section != null) {
+			lastSection = section;
+		}
+		return section;
+	}
+
+	/**
+	 * Creates a reader for a thread that reads the storage while other threads do too. The storage must not be
+	 * modified while the reader is in use.
+	 */
+	public ConcurrentReader newConcurrentReader() {
+		return new ConcurrentReader();
+	}
+
+	private Section getOrCreateSection(int x, int y, int z) {
+		Section section = getSection(x, y, z);
+		if (section == null) {
+			long key = SectionTable.keyOfBlock(x, y, z);
+			section = new Section(key, defaultBlock, defaultTransparent);
+			sections.put(key, section);
+			lastSection = section;
 		}
+		return section;
+	}
+
+	private static int indexInSection(int x, int y, int z) {
+		return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+	}
 
-		int index = ((pos.getY() & 15) << 8) | ((pos.getZ() & 15) << 4) | (pos.getX() & 15);
-		int indexInWord = index % blocksPerWord;
-		long word = packedArray[index / blocksPerWord];
-		int id = (int) (word >>> (indexInWord * bitsPerBlock)) & (maxNumBlocks - 1);
-		if (id <= 0 || id > inversePalette.size()) {
+	public BlockState getBlock(BlockVector3 pos) {
+		return getBlock(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	public BlockState getBlock(int x, int y, int z) {
+		Section section = getSection(x, y, z);
+		if (section == null) {
 			return defaultBlock;
 		}
-		return inversePalette.get(id - 1);
+		return section.get(indexInSection(x, y, z));
 	}
 
 	public void setBlock(BlockVector3 pos, BlockState block) {
-		int prevSize = palette.size();
-		int id = block.equals(defaultBlock) ? 0 : palette.computeIfAbsent(block, k -> prevSize + 1);
-		if (palette.size() != prevSize) {
-			inversePalette.add(block);
-			if ((prevSize & (prevSize + 1)) == 0) {
-				expandBitsPerBlock();
+		setBlock(pos.getX(), pos.getY(), pos.getZ(), block);
+	}
+
+	public void setBlock(int x, int y, int z, BlockState block) {
+		Section section = getSection(x, y, z);
+		if (section == null) {
+			if (block.getOrdinal() == defaultBlock.getOrdinal()) {
+				return;
+			}
+			section = getOrCreateSection(x, y, z);
+		}
+		int index = indexInSection(x, y, z);
+		section.set(index, block);
+		boolean transparent = isTransparentBlock(block);
+		boolean transparencyChanged = section.isTransparent(index) != transparent;
+		section.setTransparent(index, transparent);
+		if (transparencyChanged && surfaceMasks != null) {
+			surfaceMasks.update(x, y, z, transparent);
+		}
+		if (trackDirty) {
+			section.markDirty(index);
+		}
+	}
+
+	/**
+	 * Gets whether the block at the given position is transparent
+	 */
+	public boolean isTransparent(int x, int y, int z) {
+		Section section = getSection(x, y, z);
+		if (section == null) {
+			return defaultTransparent;
+		}
+		return section.isTransparent(indexInSection(x, y, z));
+	}
+
+	/**
+	 * Gets the transparency bits of the given section, indexed by (y, z, x). The returned array must not be modified
+	 */
+	long[] getTransparentBits(long sectionKey) {
+		Section section = sections.get(sectionKey);
+		if (section == null) {
+			return defaultTransparent ? ALL_TRANSPARENT : ALL_OPAQUE;
+		}
+		return section.transparent;
+	}
+
+	/**
+	 * Starts providing surface masks of the stored blocks. The masks of a section are computed when it is first queried,
+	 * and kept up to date as blocks are written from then on
+	 */
+	public void buildSurfaceMasks() {
+		this.surfaceMasks = new SurfaceMasks(this);
+	}
+
+	/**
+	 * Gets the surface masks, or null if they have not been built yet
+	 */
+	public @Nullable SurfaceMasks getSurfaceMasks() {
+		return surfaceMasks;
+	}
+
+	/**
+	 * Gets whether the given block is transparent, caching the result per block state
+	 */
+	public boolean isTransparentBlock(BlockState block) {
+		int ordinal = block.getOrdinal();
+		byte value = transparency[ordinal];
+		if (value == UNKNOWN) {
+			value = transparentBlocks.test(block) ? TRANSPARENT : OPAQUE;
+			transparency[ordinal] = value;
+		}
+		return value == TRANSPARENT;
+	}
+
+	/**
+	 * Passes every dirty block to the consumer in chunk order, then clears the dirty flags
+	 */
+	public void flushDirtyBlocks(BlockConsumer consumer) {
+		for (long key : sections.sortedKeys()) {
+			Section section = sections.get(key);
+			if (section.dirty != null) {
+				flushDirtyBlocks(key, section, consumer);
+			}
+		}
+	}
+
+	private static void flushDirtyBlocks(long key, Section section, BlockConsumer consumer) {
+		long[] dirty = section.dirty;
+		int baseX = SectionTable.sectionX(key) << 4;
+		int baseY = SectionTable.sectionY(key) << 4;
+		int baseZ = SectionTable.sectionZ(key) << 4;
+		for (int wordIndex = 0; wordIndex < dirty.length; wordIndex++) {
+			long word = dirty[wordIndex];
+			while (word != 0) {
+				int index = (wordIndex << 6) | Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				consumer.accept(baseX | (index & 15), baseY | (index >> 8), baseZ | ((index >> 4) & 15), section.get(index));
+			}
+		}
+		section.dirty = null;
+	}
+
+	/**
+	 * Passes every dirty block in the given chunk to the consumer, then clears their dirty flags
+	 */
+	public void flushDirtyBlocks(int chunkX, int chunkZ, BlockConsumer consumer) {
+		for (int sectionY = 0; sectionY < 16; sectionY++) {
+			long key = SectionTable.key(chunkX, sectionY, chunkZ);
+			Section section = sections.get(key);
+			if (section != null && section.dirty != null) {
+				flushDirtyBlocks(key, section, consumer);
+			}
+		}
+	}
+
+	public int getDirtySectionCount() {
+		int[] count = {0};
+		sections.forEach((key, section) -> {
+			if (section.dirty != null) {
+				count[0]++;
+			}
+		});
+		return count[0];
+	}
+
+	public int getSectionCount() {
+		return sections.size();
+	}
+
+	public String describeStatistics() {
+		int[] directSections = {0};
+		long[] bytes = {0};
+		sections.forEach((key, section) -> {
+			if (section.ordinals != null) {
+				directSections[0]++;
+				bytes[0] += section.ordinals.length * 2L;
+			} else {
+				bytes[0] += section.data.length * 8L + section.palette.length * 4L;
+			}
+			bytes[0] += section.transparent.length * 8L;
+		});
+		return sections.size() + " sections (" + directSections[0] + " direct), ~" + (bytes[0] / 1024) + " KiB; section table: " + sections.describeStatistics();
+	}
+
+	/**
+	 * Reads the blocks of the storage without touching its shared lookup cache or statistics
+	 */
+	public final class ConcurrentReader {
+		// the last section this reader looked up
+		private Section lastSection;
+
+		private ConcurrentReader() {
+		}
+
+		private Section getSection(int x, int y, int z) {
+			long key = SectionTable.keyOfBlock(x, y, z);
+			Section section = lastSection;
+			if (section != null && section.key == key) {
+				return section;
 			}
+			section = sections.peek(key);
+			if (section != null) {
+				lastSection = section;
+			}
+			return section;
 		}
 
-		long[] packedArray = subchunks.computeIfAbsent(subchunkPos(pos), k -> new long[(4096 + blocksPerWord - 1) / blocksPerWord]);
-		int index = ((pos.getY() & 15) << 8) | ((pos.getZ() & 15) << 4) | (pos.getX() & 15);
-		int indexInWord = index % blocksPerWord;
-		int wordIndex = index / blocksPerWord;
-		long word = packedArray[wordIndex];
-		word &= ~((long) (maxNumBlocks - 1) << (indexInWord * bitsPerBlock));
-		word |= (long) id << (indexInWord * bitsPerBlock);
-		packedArray[wordIndex] = word;
+		public BlockState getBlock(int x, int y, int z) {
+			Section section = getSection(x, y, z);
+			if (section == null) {
+				return defaultBlock;
+			}
+			return section.get(indexInSection(x, y, z));
+		}
+
+		public boolean isTransparent(int x, int y, int z) {
+			Section section = getSection(x, y, z);
+			if (section == null) {
+				return defaultTransparent;
+			}
+			return section.isTransparent(indexInSection(x, y, z));
+		}
 	}
 
-	private void expandBitsPerBlock() {
-		int prevBitsPerBlock = bitsPerBlock;
-		int prevMaxNumBlocks = maxNumBlocks;
-		int prevBlocksPerWord = blocksPerWord;
-		bitsPerBlock = prevBitsPerBlock + 1;
-		maxNumBlocks = prevMaxNumBlocks << 1;
-		blocksPerWord = 64 / bitsPerBlock;
+	private static final class Section {
+		private static final int MAX_PALETTE_SIZE = 256;
+
+		private final long key;
+		// the local palette, index 0 is always the default block. Null once the section has switched to direct mode
+		private BlockState[] palette;
+		private int paletteSize;
+		private int lastId;
+		private int bitsPerBlock = 1;
+		private int blocksPerWord = 64;
+		private long[] data = new long[4096 / 64];
+		// raw block state ordinals, only used in direct mode
+		private char[] ordinals;
+		// one bit per block written since the last flush, null if there are none
+		private long[] dirty;
+		// one bit per transparent block
+		private final long[] transparent = new long[4096 / 64];
+
+		private Section(long key, BlockState defaultBlock, boolean defaultTransparent) {
+			this.key = key;
+			this.palette = new BlockState[4];
+			this.palette[0] = defaultBlock;
+			this.paletteSize = 1;
+			if (defaultTransparent) {
+				Arrays.fill(transparent, -1L);
+			}
+		}
+
+		private BlockState get(int index) {
+			if (ordinals != null) {
+				return BlockTypesCache.states[ordinals[index]];
+			}
+			long word = data[index / blocksPerWord];
+			int id = (int) (word >>> ((index % blocksPerWord) * bitsPerBlock)) & ((1 << bitsPerBlock) - 1);
+			return palette[id];
+		}
+
+		private void set(int index, BlockState block) {
+			if (ordinals == null) {
+				int id = getOrAddId(block);
+				if (id >= 0) {
+					int indexInWord = index % blocksPerWord;
+					int wordIndex = index / blocksPerWord;
+					long word = data[wordIndex];
+					word &= ~((long) ((1 << bitsPerBlock) - 1) << (indexInWord * bitsPerBlock));
+					word |= (long) id << (indexInWord * bitsPerBlock);
+					data[wordIndex] = word;
+					return;
+				}
+			}
+			ordinals[index] = block.getOrdinalChar();
+		}
 
-		subchunks.replaceAll((pos, oldArray) -> {
+		private boolean isTransparent(int index) {
+			return (transparent[index >> 6] & (1L << index)) != 0;
+		}
+
+		private void setTransparent(int index, boolean isTransparent) {
+			if (isTransparent) {
+				transparent[index >> 6] |= 1L << index;
+			} else {
+				transparent[index >> 6] &= ~(1L << index);
+			}
+		}
+
+		private void markDirty(int index) {
+			if (dirty == null) {
+				dirty = new long[4096 / 64];
+			}
+			dirty[index >> 6] |= 1L << index;
+		}
+
+		// returns -1 if the section has switched to direct mode
+		private int getOrAddId(BlockState block) {
+			int ordinal = block.getOrdinal();
+			if (palette[lastId].getOrdinal() == ordinal) {
+				return lastId;
+			}
+			for (int id = 0; id < paletteSize; id++) {
+				if (palette[id].getOrdinal() == ordinal) {
+					return lastId = id;
+				}
+			}
+
+			if (paletteSize == MAX_PALETTE_SIZE) {
+				switchToDirect();
+				return -1;
+			}
+			if (paletteSize == palette.length) {
+				palette = Arrays.copyOf(palette, palette.length * 2);
+			}
+			if (paletteSize == 1 << bitsPerBlock) {
+				expandBitsPerBlock();
+			}
+			palette[paletteSize] = block;
+			return lastId = paletteSize++;
+		}
+
+		private void expandBitsPerBlock() {
+			int prevBitsPerBlock = bitsPerBlock;
+			int prevBlocksPerWord = blocksPerWord;
+			long prevMask = (1L << prevBitsPerBlock) - 1;
+			bitsPerBlock = prevBitsPerBlock + 1;
+			blocksPerWord = 64 / bitsPerBlock;
+
+			long[] oldArray = data;
 			long[] newArray = new long[(4096 + blocksPerWord - 1) / blocksPerWord];
 			for (int index = 0; index < 4096; index++) {
 				int indexInOldWord = index % prevBlocksPerWord;
 				int indexInNewWord = index % blocksPerWord;
 				long oldWord = oldArray[index / prevBlocksPerWord];
-				long id = (oldWord >>> (indexInOldWord * prevBitsPerBlock)) & (prevMaxNumBlocks - 1);
+				long id = (oldWord >>> (indexInOldWord * prevBitsPerBlock)) & prevMask;
 				newArray[index / blocksPerWord] |= id << (indexInNewWord * bitsPerBlock);
 			}
-			return newArray;
-		});
+			data = newArray;
+		}
+
+		private void switchToDirect() {
+			char[] newOrdinals = new char[4096];
+			for (int index = 0; index < 4096; index++) {
+				newOrdinals[index] = get(index).getOrdinalChar();
+			}
+			ordinals = newOrdinals;
+			palette = null;
+			data = null;
+		}
+	}
+
+	@FunctionalInterface
+	public interface BlockConsumer {
+		void accept(int x, int y, int z, BlockState block);
 	}
 }
@@ -1,78 +1,98 @@
 package com.gmail.sharpcastle33.did.generator;
 
 import com.gmail.sharpcastle33.did.Util;
+import com.gmail.sharpcastle33.did.generator.painter.PaintScan;
 import com.gmail.sharpcastle33.did.generator.painter.PainterStep;
 import com.gmail.sharpcastle33.did.generator.structure.Structure;
 import com.sk89q.worldedit.MaxChangedBlocksException;
 import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.math.BlockVector2;
 import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.math.Vector3;
 import com.sk89q.worldedit.util.Direction;
 import com.sk89q.worldedit.world.block.BlockTypes;
 import org.bukkit.Bukkit;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Level;
+import java.util.stream.IntStream;
 
 public class PostProcessor {
 
 	private static final int STRUCTURE_CHANCE_ADJUST = 6 * 6;
 
-	public static void postProcess(CaveGenContext ctx, List<Centroid> centroids, List<List<Vector3>> roomLocations) throws WorldEditException {
+	public static void postProcess(CaveGenContext ctx, List<Centroid> centroids, List<List<Vector3>> roomLocations, @Nullable ChunkSealer sealer) throws WorldEditException {
 		Bukkit.getLogger().log(Level.WARNING, "Beginning smoothing pass... " + centroids.size() + " centroids.");
 
-		int roomStart = 0;
-		while (roomStart < centroids.size()) {
-			int roomIndex = centroids.get(roomStart).roomIndex;
-			int roomEnd;
-			roomEnd = roomStart;
-			while (roomEnd < centroids.size() && centroids.get(roomEnd).roomIndex == roomIndex) {
-				roomEnd++;
-			}
+		if (ctx.isParallel()) {
+			TileScheduler.smooth(ctx, centroids);
+		} else {
+			int roomStart = 0;
+			while (roomStart < centroids.size()) {
+				int roomIndex = centroids.get(roomStart).roomIndex;
+				int roomEnd;
+				roomEnd = roomStart;
+				while (roomEnd < centroids.size() && centroids.get(roomEnd).roomIndex == roomIndex) {
+					roomEnd++;
+				}
 
-			List<Centroid> roomCentroids = centroids.subList(roomStart, roomEnd);
-			int minRoomY = roomCentroids.stream().mapToInt(centroid -> centroid.pos.getBlockY() - centroid.size).min().orElse(0);
-			int maxRoomY = roomCentroids.stream().mapToInt(centroid -> centroid.pos.getBlockY() + centroid.size).max().orElse(255);
-			for (Centroid centroid : roomCentroids) {
-				smooth(ctx, centroid, minRoomY, maxRoomY);
-			}
+				List<Centroid> roomCentroids = centroids.subList(roomStart, roomEnd);
+				int minRoomY = roomCentroids.stream().mapToInt(centroid -> centroid.pos.getBlockY() - centroid.size).min().orElse(0);
+				int maxRoomY = roomCentroids.stream().mapToInt(centroid -> centroid.pos.getBlockY() + centroid.size).max().orElse(255);
+				int[] roomCentroidIndexes = IntStream.range(roomStart, roomEnd).toArray();
+				SmoothingPass.smoothRoom(ctx, centroids, roomCentroidIndexes, minRoomY, maxRoomY, i -> ctx.substream(RandomStreams.Stage.SMOOTH, i),
+						Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
 
-			roomStart = roomEnd;
+				roomStart = roomEnd;
+			}
 		}
 
+		ctx.buildSurfaceMasks();
+
 		Bukkit.getLogger().log(Level.WARNING, "Beginning painter pass...");
 
-		Set<BlockVector3> paintedBlocks = new HashSet<>();
-		List<BlockVector3> paintedBlocksThisCentroid = new ArrayList<>();
-		for(Centroid centroid : centroids) {
+		SectionBitSet paintedBlocks = new SectionBitSet();
+		SectionBitSet paintedBlocksThisCentroid = new SectionBitSet();
+		for (int i = 0; i < centroids.size(); i++) {
+			Centroid centroid = centroids.get(i);
+			CaveGenContext paintCtx = ctx.substream(RandomStreams.Stage.PAINT, i);
+			PaintScan scan = null;
 			for (PainterStep painterStep : ctx.style.getPainterSteps()) {
-				if (painterStep.areTagsInverted()
-						? painterStep.getTags().stream().noneMatch(centroid.tags::contains)
-						: painterStep.getTags().stream().anyMatch(centroid.tags::contains)) {
-					painterStep.apply(ctx, centroid, pos -> {
-						if (paintedBlocks.contains(pos)) {
+				if (painterStep.getTagSet().intersects(centroid.tags) != painterStep.areTagsInverted()) {
+					if (scan == null) {
+						scan = new PaintScan(paintCtx, centroid);
+					}
+					painterStep.apply(paintCtx, centroid, scan, (x, y, z) -> {
+						if (paintedBlocks.contains(x, y, z)) {
 							return false;
 						}
-						paintedBlocksThisCentroid.add(pos);
+						paintedBlocksThisCentroid.add(x, y, z);
 						return true;
 					});
 				}
 			}
+			if (scan != null) {
+				scan.finish();
+			}
 			paintedBlocks.addAll(paintedBlocksThisCentroid);
 			paintedBlocksThisCentroid.clear();
+			if (sealer != null) {
+				for (BlockVector2 chunk : sealer.centroidDone(i)) {
+					ctx.sealChunk(chunk);
+				}
+			}
 		}
 
 		Bukkit.getLogger().log(Level.WARNING, "Beginning structure pass...");
 
-		for (Structure structure : ctx.style.getStructures()) {
-			generateStructure(ctx, centroids, structure);
+		List<Structure> structures = ctx.style.getStructures();
+		for (int i = 0; i < structures.size(); i++) {
+			generateStructure(ctx.substream(RandomStreams.Stage.STRUCTURE, i), centroids, structures.get(i));
 		}
 
 		if (!centroids.isEmpty()) {
-			generatePortal(ctx, centroids.get(0));
+			generatePortal(ctx.substream(RandomStreams.Stage.PORTAL, 0), centroids.get(0));
 		}
 
 		if (ctx.isDebug()) {
@@ -98,41 +118,17 @@ public class PostProcessor {
 		}
 	}
 
-	public static void smooth(CaveGenContext ctx, Centroid centroid, int minRoomY, int maxRoomY) throws MaxChangedBlocksException {
-		int x = centroid.pos.getBlockX();
-		int y = centroid.pos.getBlockY();
-		int z = centroid.pos.getBlockZ();
-		int r = centroid.size + 2;
-
-		for(int tx = -r; tx <= r; tx++){
-			for(int ty = -r; ty <= r; ty++){
-				for(int tz = -r; tz <= r; tz++){
-					if(tx * tx  +  ty * ty  +  tz * tz <= r * r){
-						BlockVector3 pos = BlockVector3.at(tx+x, ty+y, tz+z);
-
-						if(ctx.style.getBaseBlock().equalsFuzzy(ctx.getBlock(pos))) {
-							int amt = countTransparent(ctx, pos);
-							if(amt >= 13) {
-								//Bukkit.getServer().getLogger().log(Level.WARNING,"count: " + amt);
-								if(ctx.rand.nextInt(100) < 95) {
-									ctx.setBlock(pos, ctx.style.getAirBlock(pos.getBlockY(), centroid, minRoomY, maxRoomY).get(ctx, centroid));
-								}
-							}
-						}
-					}
-				}
-			}
-		}
+	public static int countTransparent(CaveGenContext ctx, BlockVector3 loc) {
+		return countTransparent(ctx, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
 	}
 
-	public static int countTransparent(CaveGenContext ctx, BlockVector3 loc) {
+	public static int countTransparent(CaveGenContext ctx, int x, int y, int z) {
 		final int r = 1;
 		int count = 0;
 		for (int tx = -r; tx <= r; tx++) {
 			for (int ty = -r; ty <= r; ty++) {
 				for (int tz = -r; tz <= r; tz++) {
-					BlockVector3 pos = loc.add(tx, ty, tz);
-					if (ctx.style.isTransparentBlock(ctx.getBlock(pos))) {
+					if (ctx.isTransparent(x + tx, y + ty, z + tz)) {
 						count++;
 					}
 				}
@@ -147,10 +143,12 @@ public class PostProcessor {
 		if (structure.getValidDirections().isEmpty()) {
 			return;
 		}
-		for (Centroid centroid : centroids) {
+		for (int i = 0; i < centroids.size(); i++) {
+			Centroid centroid = centroids.get(i);
 			if (centroid.size <= 0) {
 				continue;
 			}
+			CaveGenContext centroidCtx = ctx.substream(RandomStreams.Stage.STRUCTURE, i);
 
 			double averageStructures = structure.getCount() * (centroid.size * centroid.size) / STRUCTURE_CHANCE_ADJUST;
 			// compute the number of structures in this centroid using the Poisson distribution
@@ -159,15 +157,13 @@ public class PostProcessor {
 			int numStructures = -1;
 			double p = 1;
 			do {
-				p *= ctx.rand.nextDouble();
+				p *= centroidCtx.rand.nextDouble();
 				numStructures++;
 			} while (p > L);
 
 			for (int j = 0; j < numStructures; j++) {
-				if (structure.areTagsInverted()
-						? structure.getTags().stream().noneMatch(centroid.tags::contains)
-						: structure.getTags().stream().anyMatch(centroid.tags::contains)) {
-					placeStructure(ctx, structure, centroid, false);
+				if (structure.getTagSet().intersects(centroid.tags) != structure.areTagsInverted()) {
+					placeStructure(centroidCtx, structure, centroid, false);
 				}
 			}
 		}
@@ -250,15 +246,27 @@ public class PostProcessor {
 	}
 
 	public static boolean isFloor(CaveGenContext ctx, BlockVector3 pos) {
-		return isSolid(ctx, pos) && isSolid(ctx, pos.add(0, -1, 0)) && !isSolid(ctx, pos.add(0, 1, 0));
+		return isFloor(ctx, pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
+	}
+
+	public static boolean isFloor(CaveGenContext ctx, int x, int y, int z) {
+		return ctx.isFloor(x, y, z);
 	}
 
 	public static boolean isRoof(CaveGenContext ctx, BlockVector3 pos) {
-		return isSolid(ctx, pos) && !isSolid(ctx, pos.add(0, -1, 0)) && isSolid(ctx, pos.add(0, 1, 0));
+		return isRoof(ctx, pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
+	}
+
+	public static boolean isRoof(CaveGenContext ctx, int x, int y, int z) {
+		return ctx.isCeiling(x, y, z);
 	}
 
 	public static boolean isSolid(CaveGenContext ctx, BlockVector3 pos) {
-		return !ctx.style.isTransparentBlock(ctx.getBlock(pos));
+		return isSolid(ctx, pos.getBlockX(), pos.getBlockY(), pos.getBlockZ());
+	}
+
+	public static boolean isSolid(CaveGenContext ctx, int x, int y, int z) {
+		return !ctx.isTransparent(x, y, z);
 	}
 
 	public static BlockVector3 getWall(CaveGenContext ctx, BlockVector3 loc, int r, BlockVector3 direction) {
@@ -266,7 +274,7 @@ public class PostProcessor {
 		BlockVector3 ret = loc;
 		for(int i = 0; i < r; i++) {
 			ret = ret.add(direction);
-			if (!ctx.style.isTransparentBlock(ctx.getBlock(ret))) {
+			if (!ctx.isTransparent(ret)) {
 				return ret;
 			}
 		}
@@ -277,7 +285,7 @@ public class PostProcessor {
 		BlockVector3 ret = loc;
 		for(int i = 0; i < r+2; i++) {
 			ret = ret.add(0,1,0);
-			if (!ctx.style.isTransparentBlock(ctx.getBlock(ret))) {
+			if (!ctx.isTransparent(ret)) {
 				return ret;
 			}
 		}
@@ -288,7 +296,7 @@ public class PostProcessor {
 		BlockVector3 ret = loc;
 		for(int i = 0; i < r+2; i++) {
 			ret = ret.add(0, -1, 0);
-			if (!ctx.style.isTransparentBlock(ctx.getBlock(ret))) {
+			if (!ctx.isTransparent(ret)) {
 				return ret;
 			}
 		}
@@ -335,15 +343,15 @@ public class PostProcessor {
 
 
 	public boolean isSlabConditionBottom(CaveGenContext ctx, BlockVector3 loc) {
-		if(!ctx.style.isTransparentBlock(ctx.getBlock(loc))) {
-			return ctx.style.isTransparentBlock(ctx.getBlock(loc.add(0, 1, 0)));
+		if(!ctx.isTransparent(loc)) {
+			return ctx.isTransparent(loc.add(0, 1, 0));
 		}
 		return false;
 	}
 
 	public boolean isSlabConditionTop(CaveGenContext ctx, BlockVector3 loc) {
-		if(!ctx.style.isTransparentBlock(ctx.getBlock(loc))) {
-			return ctx.style.isTransparentBlock(ctx.getBlock(loc.add(0, -1, 0)));
+		if(!ctx.isTransparent(loc)) {
+			return ctx.isTransparent(loc.add(0, -1, 0));
 		}
 		return false;
 	}
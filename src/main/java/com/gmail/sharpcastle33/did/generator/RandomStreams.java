@@ -0,0 +1,35 @@
+package com.gmail.sharpcastle33.did.generator;
+
+/**
+ * Derives the seeds of independent random number streams for each stage of generation, so that rooms and passes can be
+ * reproduced, reordered or run concurrently without affecting each other. A stream's seed depends only on its parent
+ * stream's seed, the stage and the index within that stage.
+ *
+ * @see CaveGenContext#substream(Stage, long)
+ */
+public final class RandomStreams {
+	private RandomStreams() {
+	}
+
+	public static long seed(long parentSeed, Stage stage, long index) {
+		long seed = mix(parentSeed + (stage.ordinal() + 1) * 0x9e3779b97f4a7c15L);
+		return mix(seed + index * 0xc2b2ae3d27d4eb4fL);
+	}
+
+	// the SplitMix64 finalizer
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	public enum Stage {
+		LAYOUT,
+		ROOM,
+		CARVE,
+		SMOOTH,
+		PAINT,
+		STRUCTURE,
+		PORTAL,
+	}
+}
@@ -0,0 +1,70 @@
+package com.gmail.sharpcastle33.did.generator;
+
+/**
+ * A set of block positions, stored as one 4096 bit bitmap per 16x16x16 section
+ */
+public class SectionBitSet {
+	private final SectionTable<long[]> sections = new SectionTable<>();
+	// most accesses are spatially coherent, so remember the last section we looked up
+	private long lastKey;
+	private long[] lastSection;
+
+	private static int indexInSection(int x, int y, int z) {
+		return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+	}
+
+	private long[] getSection(long key) {
+		if (lastSection != null && lastKey == key) {
+			return lastSection;
+		}
+		long[] section = sections.get(key);
+		if (section != null) {
+			lastKey = key;
+			lastSection = section;
+		}
+		return section;
+	}
+
+	public boolean contains(int x, int y, int z) {
+		long[] section = getSection(SectionTable.keyOfBlock(x, y, z));
+		if (section == null) {
+			return false;
+		}
+		int index = indexInSection(x, y, z);
+		return (section[index >> 6] & (1L << index)) != 0;
+	}
+
+	public void add(int x, int y, int z) {
+		long key = SectionTable.keyOfBlock(x, y, z);
+		long[] section = getSection(key);
+		if (section == null) {
+			section = new long[4096 / 64];
+			sections.put(key, section);
+			lastKey = key;
+			lastSection = section;
+		}
+		int index = indexInSection(x, y, z);
+		section[index >> 6] |= 1L << index;
+	}
+
+	/**
+	 * Adds all the positions in the other set to this set, a section at a time
+	 */
+	public void addAll(SectionBitSet other) {
+		other.sections.forEach((key, otherSection) -> {
+			long[] section = sections.get(key);
+			if (section == null) {
+				sections.put(key, otherSection.clone());
+			} else {
+				for (int i = 0; i < section.length; i++) {
+					section[i] |= otherSection[i];
+				}
+			}
+		});
+	}
+
+	public void clear() {
+		sections.clear();
+		lastSection = null;
+	}
+}
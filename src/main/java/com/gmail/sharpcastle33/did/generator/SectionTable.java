@@ -0,0 +1,213 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * An open-addressing hash table keyed by packed section coordinates, see {@link #key(int, int, int)}.
+ * Lookups never allocate, and the table keeps track of its own probe statistics.
+ */
+public final class SectionTable<T> {
+	private static final float MAX_LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+
+	private long lookups;
+	private long probes;
+	private int maxProbeLength;
+
+	public SectionTable() {
+		this(64);
+	}
+
+	public SectionTable(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD_FACTOR)) - 1) << 1;
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.mask = capacity - 1;
+	}
+
+	// x is stored signed in the top bits, z and y are stored offset so that keys sort in (x, z, y) order
+	public static long key(int sectionX, int sectionY, int sectionZ) {
+		return (long) sectionX << 38 | ((long) (sectionZ + (1 << 25)) & 0x3ffffff) << 12 | ((sectionY + (1 << 11)) & 0xfff);
+	}
+
+	public static long keyOfBlock(int x, int y, int z) {
+		return key(x >> 4, y >> 4, z >> 4);
+	}
+
+	public static int sectionX(long key) {
+		return (int) (key >> 38);
+	}
+
+	public static int sectionY(long key) {
+		return (int) (key & 0xfff) - (1 << 11);
+	}
+
+	public static int sectionZ(long key) {
+		return (int) ((key >>> 12) & 0x3ffffff) - (1 << 25);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9e3779b97f4a7c15L;
+		h ^= h >>> 32;
+		return (int) (h ^ (h >>> 16));
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(long key) {
+		lookups++;
+		int slot = hash(key) & mask;
+		int probeLength = 0;
+		Object value;
+		while ((value = values[slot]) != null) {
+			if (keys[slot] == key) {
+				recordProbes(probeLength);
+				return (T) value;
+			}
+			slot = (slot + 1) & mask;
+			probeLength++;
+		}
+		recordProbes(probeLength);
+		return null;
+	}
+
+	/**
+	 * Same as {@link #get(long)}, but doesn't record statistics, so it can be called from several threads at once as
+	 * long as the table isn't modified
+	 */
+	@SuppressWarnings("unchecked")
+	public T peek(long key) {
+		int slot = hash(key) & mask;
+		Object value;
+		while ((value = values[slot]) != null) {
+			if (keys[slot] == key) {
+				return (T) value;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	public T computeIfAbsent(long key, LongFunction<? extends T> factory) {
+		T value = get(key);
+		if (value == null) {
+			value = factory.apply(key);
+			put(key, value);
+		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T put(long key, T value) {
+		if (value == null) {
+			throw new NullPointerException("SectionTable does not support null values");
+		}
+		int slot = hash(key) & mask;
+		Object existing;
+		while ((existing = values[slot]) != null) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return (T) existing;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > values.length * MAX_LOAD_FACTOR) {
+			rehash(values.length << 1);
+		}
+		return null;
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[newCapacity];
+		values = new Object[newCapacity];
+		mask = newCapacity - 1;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void recordProbes(int probeLength) {
+		probes += probeLength;
+		if (probeLength > maxProbeLength) {
+			maxProbeLength = probeLength;
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void forEach(Consumer<? super T> consumer) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				consumer.accept(keys[i], (T) values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns all keys in the table, sorted by chunk (x, then z) and then by section y
+	 */
+	public long[] sortedKeys() {
+		long[] result = new long[size];
+		int n = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				result[n++] = keys[i];
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return values.length;
+	}
+
+	public double getLoadFactor() {
+		return (double) size / values.length;
+	}
+
+	public long getLookups() {
+		return lookups;
+	}
+
+	public double getAverageProbeLength() {
+		return lookups == 0 ? 0 : (double) probes / lookups;
+	}
+
+	public int getMaxProbeLength() {
+		return maxProbeLength;
+	}
+
+	public String describeStatistics() {
+		return String.format("%d/%d slots used (load %.2f), %d lookups, %.3f avg probes, %d max probes",
+				size, capacity(), getLoadFactor(), lookups, getAverageProbeLength(), maxProbeLength);
+	}
+
+	@FunctionalInterface
+	public interface Consumer<T> {
+		void accept(long key, T value);
+	}
+}
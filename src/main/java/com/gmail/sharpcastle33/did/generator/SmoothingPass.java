@@ -0,0 +1,183 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import com.gmail.sharpcastle33.did.provider.BlockProvider;
+import com.sk89q.worldedit.MaxChangedBlocksException;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Smooths the walls of a room in a single sweep. The blocks around the room are read once into a transparency bitmap,
+ * the number of transparent blocks in each 3x3x3 neighborhood is computed with a separable box filter, and every base
+ * block with enough transparent neighbors is then removed with a random chance, centroid by centroid.
+ */
+public class SmoothingPass {
+	private static final int MIN_TRANSPARENT_NEIGHBORS = 13;
+	private static final int SMOOTH_CHANCE = 95;
+	private static final int EXTRA_RADIUS = 2;
+
+	private static final byte NEEDED = 1;
+	private static final byte TRANSPARENT = 2;
+	private static final byte BASE = 4;
+
+	/**
+	 * Smooths the given centroids of a single room, between the given x and z bounds
+	 *
+	 * @param centroidCtx the context to use for the centroid with the given index
+	 */
+	public static void smoothRoom(CaveGenContext ctx, List<Centroid> centroids, int[] centroidIndexes, int minRoomY, int maxRoomY,
+								  IntFunction<CaveGenContext> centroidCtx, int minX, int maxX, int minZ, int maxZ) throws MaxChangedBlocksException {
+		if (centroidIndexes.length == 0) {
+			return;
+		}
+
+		// the part of the room that can be smoothed, then expanded by one block for the neighbors
+		int boxMinX = Integer.MAX_VALUE, boxMinY = Integer.MAX_VALUE, boxMinZ = Integer.MAX_VALUE;
+		int boxMaxX = Integer.MIN_VALUE, boxMaxY = Integer.MIN_VALUE, boxMaxZ = Integer.MIN_VALUE;
+		for (int index : centroidIndexes) {
+			Centroid centroid = centroids.get(index);
+			int r = centroid.size + EXTRA_RADIUS;
+			boxMinX = Math.min(boxMinX, centroid.pos.getBlockX() - r);
+			boxMinY = Math.min(boxMinY, centroid.pos.getBlockY() - r);
+			boxMinZ = Math.min(boxMinZ, centroid.pos.getBlockZ() - r);
+			boxMaxX = Math.max(boxMaxX, centroid.pos.getBlockX() + r);
+			boxMaxY = Math.max(boxMaxY, centroid.pos.getBlockY() + r);
+			boxMaxZ = Math.max(boxMaxZ, centroid.pos.getBlockZ() + r);
+		}
+		boxMinX = Math.max(boxMinX, minX) - 1;
+		boxMinY--;
+		boxMinZ = Math.max(boxMinZ, minZ) - 1;
+		boxMaxX = Math.min(boxMaxX, maxX) + 1;
+		boxMaxY++;
+		boxMaxZ = Math.min(boxMaxZ, maxZ) + 1;
+		if (boxMinX > boxMaxX || boxMinZ > boxMaxZ) {
+			return;
+		}
+		int sizeX = boxMaxX - boxMinX + 1;
+		int sizeY = boxMaxY - boxMinY + 1;
+		int sizeZ = boxMaxZ - boxMinZ + 1;
+		byte[] flags = new byte[sizeX * sizeY * sizeZ];
+
+		// only read the blocks near the centroids, the box of a long room is mostly empty
+		for (int index : centroidIndexes) {
+			Centroid centroid = centroids.get(index);
+			SphereOffsets offsets = SphereOffsets.get(SphereOffsets.Shape.SMOOTH, centroid.size + EXTRA_RADIUS + 2);
+			forEachInBox(offsets, centroid, boxMinX, boxMinY, boxMinZ, sizeX, sizeY, sizeZ, boxIndex -> flags[boxIndex] = NEEDED);
+		}
+		int i = 0;
+		for (int y = boxMinY; y <= boxMaxY; y++) {
+			for (int z = boxMinZ; z <= boxMaxZ; z++) {
+				for (int x = boxMinX; x <= boxMaxX; x++, i++) {
+					if (flags[i] != 0) {
+						flags[i] = readFlags(ctx, x, y, z);
+					}
+				}
+			}
+		}
+
+		byte[] counts = countTransparentNeighbors(flags, sizeX, sizeY, sizeZ);
+
+		for (int index : centroidIndexes) {
+			Centroid centroid = centroids.get(index);
+			CaveGenContext smoothCtx = centroidCtx.apply(index);
+			int r = centroid.size + EXTRA_RADIUS;
+			SphereOffsets offsets = SphereOffsets.get(SphereOffsets.Shape.SMOOTH, r);
+			int cx = centroid.pos.getBlockX();
+			int cy = centroid.pos.getBlockY();
+			int cz = centroid.pos.getBlockZ();
+			BlockProvider[] airBlocks = smoothCtx.style.getAirBlocks(centroid, minRoomY, maxRoomY, cy - r, cy + r);
+			for (int j = 0; j < offsets.size(); j++) {
+				int x = cx + offsets.getX(j);
+				int y = cy + offsets.getY(j);
+				int z = cz + offsets.getZ(j);
+				if (x < minX || x > maxX || z < minZ || z > maxZ) {
+					continue;
+				}
+				int boxIndex = ((y - boxMinY) * sizeZ + (z - boxMinZ)) * sizeX + (x - boxMinX);
+				if ((flags[boxIndex] & BASE) != 0 && counts[boxIndex] >= MIN_TRANSPARENT_NEIGHBORS) {
+					if (smoothCtx.rand.nextInt(100) < SMOOTH_CHANCE) {
+						smoothCtx.setBlock(x, y, z, airBlocks[y - cy + r].get(smoothCtx, centroid));
+						flags[boxIndex] &= ~BASE;
+					}
+				}
+			}
+		}
+	}
+
+	private static byte readFlags(CaveGenContext ctx, int x, int y, int z) {
+		byte flags = NEEDED;
+		if (ctx.isTransparent(x, y, z)) {
+			flags |= TRANSPARENT;
+		}
+		if (ctx.style.getBaseBlock().equalsFuzzy(ctx.getBlock(x, y, z))) {
+			flags |= BASE;
+		}
+		return flags;
+	}
+
+	/**
+	 * Counts the transparent blocks in the 3x3x3 neighborhood of each block, one axis at a time
+	 */
+	private static byte[] countTransparentNeighbors(byte[] flags, int sizeX, int sizeY, int sizeZ) {
+		int strideZ = sizeX;
+		int strideY = sizeX * sizeZ;
+		byte[] a = new byte[flags.length];
+		byte[] b = new byte[flags.length];
+		for (int i = 0; i < flags.length; i++) {
+			a[i] = (byte) ((flags[i] & TRANSPARENT) >> 1);
+		}
+
+		for (int i = 0; i < flags.length; i++) {
+			int x = i % sizeX;
+			int sum = a[i];
+			if (x > 0) {
+				sum += a[i - 1];
+			}
+			if (x < sizeX - 1) {
+				sum += a[i + 1];
+			}
+			b[i] = (byte) sum;
+		}
+		for (int i = 0; i < flags.length; i++) {
+			int z = (i / strideZ) % sizeZ;
+			int sum = b[i];
+			if (z > 0) {
+				sum += b[i - strideZ];
+			}
+			if (z < sizeZ - 1) {
+				sum += b[i + strideZ];
+			}
+			a[i] = (byte) sum;
+		}
+		for (int i = 0; i < flags.length; i++) {
+			int y = i / strideY;
+			int sum = a[i];
+			if (y > 0) {
+				sum += a[i - strideY];
+			}
+			if (y < sizeY - 1) {
+				sum += a[i + strideY];
+			}
+			b[i] = (byte) sum;
+		}
+		return b;
+	}
+
+	private static void forEachInBox(SphereOffsets offsets, Centroid centroid, int boxMinX, int boxMinY, int boxMinZ, int sizeX, int sizeY, int sizeZ, IntConsumer consumer) {
+		int cx = centroid.pos.getBlockX();
+		int cy = centroid.pos.getBlockY();
+		int cz = centroid.pos.getBlockZ();
+		for (int i = 0; i < offsets.size(); i++) {
+			int x = cx + offsets.getX(i);
+			int y = cy + offsets.getY(i);
+			int z = cz + offsets.getZ(i);
+			int lx = x - boxMinX;
+			int ly = y - boxMinY;
+			int lz = z - boxMinZ;
+			if (lx >= 0 && lx < sizeX && ly >= 0 && ly < sizeY && lz >= 0 && lz < sizeZ) {
+				consumer.accept((ly * sizeZ + lz) * sizeX + lx);
+			}
+		}
+	}
+}
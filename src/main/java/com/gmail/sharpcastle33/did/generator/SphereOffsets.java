@@ -0,0 +1,175 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed offsets of the blocks inside a sphere, cached per shape and radius. The offsets are stored in the same
+ * order as the loops they replace, so that random numbers are consumed in the same order as before.
+ */
+public final class SphereOffsets {
+	private static final int COORD_BITS = 10;
+	private static final int COORD_MASK = (1 << COORD_BITS) - 1;
+	private static final int COORD_OFFSET = 1 << (COORD_BITS - 1);
+	private static final int TIP_FLAG = 1 << 30;
+	private static final ConcurrentHashMap<Integer, SphereOffsets> CACHE = new ConcurrentHashMap<>();
+	private static final SphereOffsets EMPTY = new SphereOffsets(0, new int[0], new int[2]);
+
+	private final int radius;
+	// packed (x, y, z) offsets, plus a flag for the tips of the sphere where relevant
+	private final int[] offsets;
+	// for shapes ordered by y first, the index of the first offset with each y, from -radius to radius + 1
+	private final int[] yStart;
+
+	private SphereOffsets(int radius, int[] offsets, int[] yStart) {
+		this.radius = radius;
+		this.offsets = offsets;
+		this.yStart = yStart;
+	}
+
+	public static SphereOffsets get(Shape shape, int radius) {
+		if (radius < 0) {
+			return EMPTY;
+		}
+		if (radius >= COORD_OFFSET) {
+			throw new IllegalArgumentException("Radius out of range: " + radius);
+		}
+		return CACHE.computeIfAbsent(shape.ordinal() << 16 | radius, k -> compute(shape, radius));
+	}
+
+	private static SphereOffsets compute(Shape shape, int radius) {
+		int[] offsets = new int[16];
+		int size = 0;
+		int[] yStart = null;
+		switch (shape) {
+			case CARVE: {
+				int r = radius;
+				yStart = new int[2 * r + 2];
+				for (int ty = -r; ty <= r; ty++) {
+					yStart[ty + r] = size;
+					for (int tx = -r; tx <= r; tx++) {
+						for (int tz = -r; tz <= r; tz++) {
+							if (tx * tx + ty * ty + tz * tz <= r * r) {
+								if (((tx != 0 || ty != 0) && (tx != 0 || tz != 0) && (ty != 0 || tz != 0)) || (Math.abs(tx + ty + tz) != r)) {
+									offsets = append(offsets, size++, pack(tx, ty, tz, false));
+								}
+							}
+						}
+					}
+				}
+				yStart[2 * r + 1] = size;
+				break;
+			}
+			case SMOOTH: {
+				int r = radius;
+				for (int tx = -r; tx <= r; tx++) {
+					for (int ty = -r; ty <= r; ty++) {
+						for (int tz = -r; tz <= r; tz++) {
+							if (tx * tx + ty * ty + tz * tz <= r * r) {
+								offsets = append(offsets, size++, pack(tx, ty, tz, false));
+							}
+						}
+					}
+				}
+				break;
+			}
+			case ORE: {
+				for (int tx = -radius; tx < radius + 1; tx++) {
+					for (int ty = -radius; ty < radius + 1; ty++) {
+						for (int tz = -radius; tz < radius + 1; tz++) {
+							if (tx * tx + ty * ty + tz * tz <= (radius - 2) * (radius - 2)) {
+								boolean tip = ((tx == 0 && ty == 0) || (tx == 0 && tz == 0) || (ty == 0 && tz == 0)) && (Math.abs(tx + ty + tz) == radius - 2);
+								offsets = append(offsets, size++, pack(tx, ty, tz, tip));
+							}
+						}
+					}
+				}
+				break;
+			}
+			case PAINT: {
+				yStart = new int[2 * radius + 2];
+				for (int ty = -radius; ty <= radius; ty++) {
+					yStart[ty + radius] = size;
+					for (int tx = -radius; tx <= radius; tx++) {
+						for (int tz = -radius; tz <= radius; tz++) {
+							if (tx * tx + ty * ty + tz * tz <= (radius - 2) * (radius - 2)) {
+								if (tx == 0 && tz == 0 && Math.abs(tx + ty + tz) == radius - 2) {
+									continue;
+								}
+								offsets = append(offsets, size++, pack(tx, ty, tz, false));
+							}
+						}
+					}
+				}
+				yStart[2 * radius + 1] = size;
+				break;
+			}
+			default:
+				throw new AssertionError();
+		}
+		return new SphereOffsets(radius, Arrays.copyOf(offsets, size), yStart);
+	}
+
+	private static int[] append(int[] array, int index, int value) {
+		if (index == array.length) {
+			array = Arrays.copyOf(array, array.length * 2);
+		}
+		array[index] = value;
+		return array;
+	}
+
+	private static int pack(int x, int y, int z, boolean tip) {
+		return ((x + COORD_OFFSET) << (2 * COORD_BITS)) | ((y + COORD_OFFSET) << COORD_BITS) | (z + COORD_OFFSET) | (tip ? TIP_FLAG : 0);
+	}
+
+	public int size() {
+		return offsets.length;
+	}
+
+	public int getX(int index) {
+		return ((offsets[index] >> (2 * COORD_BITS)) & COORD_MASK) - COORD_OFFSET;
+	}
+
+	public int getY(int index) {
+		return ((offsets[index] >> COORD_BITS) & COORD_MASK) - COORD_OFFSET;
+	}
+
+	public int getZ(int index) {
+		return (offsets[index] & COORD_MASK) - COORD_OFFSET;
+	}
+
+	/**
+	 * Whether the offset is one of the tips of the sphere along an axis, only set for {@link Shape#ORE}
+	 */
+	public boolean isTip(int index) {
+		return (offsets[index] & TIP_FLAG) != 0;
+	}
+
+	/**
+	 * Gets the index of the first offset with a y offset of at least the given y. Only supported by shapes which are
+	 * ordered by y first.
+	 */
+	public int indexOfY(int y) {
+		if (yStart == null) {
+			throw new UnsupportedOperationException("Offsets are not ordered by y");
+		}
+		if (y <= -radius) {
+			return 0;
+		}
+		if (y > radius) {
+			return offsets.length;
+		}
+		return yStart[y + radius];
+	}
+
+	public enum Shape {
+		/** The blocks carved by a centroid, ordered by (y, x, z), excluding the tips along each axis */
+		CARVE,
+		/** The blocks smoothed around a centroid, ordered by (x, y, z) */
+		SMOOTH,
+		/** The blocks of an ore cluster, within radius - 2, ordered by (x, y, z), with the tips flagged */
+		ORE,
+		/** The blocks painted by a painter step, within radius - 2, ordered by (y, x, z), excluding the top and bottom tips */
+		PAINT,
+	}
+}
@@ -0,0 +1,166 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import com.sk89q.worldedit.util.Direction;
+
+/**
+ * Per section bitmasks of the exposed faces of solid blocks, derived a word at a time from the transparency bits of a
+ * {@link PackedBlockStorage}. A face is exposed if the block is solid and its neighbour in that direction is
+ * transparent, so a floor is a block exposed upwards but not downwards, and a ceiling the other way around. Masks of
+ * sections that have not been looked at yet are computed lazily, and computed masks are updated in place when a write
+ * changes the transparency of a block.
+ */
+public final class SurfaceMasks {
+	private static final int UP = 0;
+	private static final int DOWN = 1;
+	private static final int NORTH = 2;
+	private static final int SOUTH = 3;
+	private static final int EAST = 4;
+	private static final int WEST = 5;
+	// the offset to the neighbour in the direction of each face. Opposite faces differ only in the lowest bit
+	private static final int[] FACE_X = {0, 0, 0, 0, 1, -1};
+	private static final int[] FACE_Y = {1, -1, 0, 0, 0, 0};
+	private static final int[] FACE_Z = {0, 0, -1, 1, 0, 0};
+
+	// the bits of a section word where x is 0 or 15
+	private static final long X0 = 0x0001000100010001L;
+	private static final long X15 = 0x8000800080008000L;
+
+	private final PackedBlockStorage storage;
+	private final SectionTable<Masks> sections = new SectionTable<>();
+	// most accesses are spatially coherent, so remember the last section we looked up
+	private Masks lastMasks;
+
+	SurfaceMasks(PackedBlockStorage storage) {
+		this.storage = storage;
+	}
+
+	private static int indexInSection(int x, int y, int z) {
+		return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+	}
+
+	private static int faceIndex(Direction facing) {
+		switch (facing) {
+			case UP: return UP;
+			case DOWN: return DOWN;
+			case NORTH: return NORTH;
+			case SOUTH: return SOUTH;
+			case EAST: return EAST;
+			case WEST: return WEST;
+			default: throw new IllegalArgumentException("Not a face direction: " + facing);
+		}
+	}
+
+	private Masks getMasks(int x, int y, int z) {
+		long key = SectionTable.keyOfBlock(x, y, z);
+		Masks masks = lastMasks;
+		if (masks == null || masks.key != key) {
+			masks = sections.get(key);
+			if (masks == null) {
+				masks = new Masks(key);
+				compute(masks);
+				sections.put(key, masks);
+			}
+			lastMasks = masks;
+		}
+		return masks;
+	}
+
+	/**
+	 * Gets whether the block is solid with a transparent block above it and a solid block below it
+	 */
+	public boolean isFloor(int x, int y, int z) {
+		int index = indexInSection(x, y, z);
+		long[][] faces = getMasks(x, y, z).faces;
+		return ((faces[UP][index >> 6] & ~faces[DOWN][index >> 6]) & (1L << index)) != 0;
+	}
+
+	/**
+	 * Gets whether the block is solid with a transparent block below it and a solid block above it
+	 */
+	public boolean isCeiling(int x, int y, int z) {
+		int index = indexInSection(x, y, z);
+		long[][] faces = getMasks(x, y, z).faces;
+		return ((faces[DOWN][index >> 6] & ~faces[UP][index >> 6]) & (1L << index)) != 0;
+	}
+
+	/**
+	 * Gets whether the block is solid and the block next to it in the given direction is transparent
+	 */
+	public boolean isExposed(int x, int y, int z, Direction facing) {
+		int index = indexInSection(x, y, z);
+		return (getMasks(x, y, z).faces[faceIndex(facing)][index >> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Updates the computed masks after the transparency of the given block has changed
+	 */
+	void update(int x, int y, int z, boolean transparent) {
+		Masks masks = sections.get(SectionTable.keyOfBlock(x, y, z));
+		int index = indexInSection(x, y, z);
+		for (int face = 0; face < 6; face++) {
+			int nx = x + FACE_X[face];
+			int ny = y + FACE_Y[face];
+			int nz = z + FACE_Z[face];
+			boolean neighbourTransparent = storage.isTransparent(nx, ny, nz);
+			if (masks != null) {
+				setBit(masks.faces[face], index, !transparent && neighbourTransparent);
+			}
+			Masks neighbourMasks = sections.get(SectionTable.keyOfBlock(nx, ny, nz));
+			if (neighbourMasks != null) {
+				setBit(neighbourMasks.faces[face ^ 1], indexInSection(nx, ny, nz), !neighbourTransparent && transparent);
+			}
+		}
+	}
+
+	private static void setBit(long[] bits, int index, boolean value) {
+		if (value) {
+			bits[index >> 6] |= 1L << index;
+		} else {
+			bits[index >> 6] &= ~(1L << index);
+		}
+	}
+
+	private void compute(Masks masks) {
+		long key = masks.key;
+		int sx = SectionTable.sectionX(key);
+		int sy = SectionTable.sectionY(key);
+		int sz = SectionTable.sectionZ(key);
+		long[] transparent = storage.getTransparentBits(key);
+		long[] above = storage.getTransparentBits(SectionTable.key(sx, sy + 1, sz));
+		long[] below = storage.getTransparentBits(SectionTable.key(sx, sy - 1, sz));
+		long[] north = storage.getTransparentBits(SectionTable.key(sx, sy, sz - 1));
+		long[] south = storage.getTransparentBits(SectionTable.key(sx, sy, sz + 1));
+		long[] east = storage.getTransparentBits(SectionTable.key(sx + 1, sy, sz));
+		long[] west = storage.getTransparentBits(SectionTable.key(sx - 1, sy, sz));
+
+		// each word holds four rows of 16 blocks along x, for one y and four consecutive z
+		long[][] faces = masks.faces;
+		for (int w = 0; w < 64; w++) {
+			long word = transparent[w];
+			long solid = ~word;
+			int y = w >> 2;
+			int zGroup = w & 3;
+			long up = y < 15 ? transparent[w + 4] : above[w - 60];
+			long down = y > 0 ? transparent[w - 4] : below[w + 60];
+			long toNorth = (word << 16) | ((zGroup > 0 ? transparent[w - 1] : north[w + 3]) >>> 48);
+			long toSouth = (word >>> 16) | ((zGroup < 3 ? transparent[w + 1] : south[w - 3]) << 48);
+			long toEast = ((word >>> 1) & ~X15) | ((east[w] & X0) << 15);
+			long toWest = ((word << 1) & ~X0) | ((west[w] & X15) >>> 15);
+			faces[UP][w] = solid & up;
+			faces[DOWN][w] = solid & down;
+			faces[NORTH][w] = solid & toNorth;
+			faces[SOUTH][w] = solid & toSouth;
+			faces[EAST][w] = solid & toEast;
+			faces[WEST][w] = solid & toWest;
+		}
+	}
+
+	private static final class Masks {
+		private final long key;
+		private final long[][] faces = new long[6][4096 / 64];
+
+		private Masks(long key) {
+			this.key = key;
+		}
+	}
+}
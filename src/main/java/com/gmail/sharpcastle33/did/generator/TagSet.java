@@ -0,0 +1,115 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable set of tags. Tag names are interned into integer ids shared by the whole plugin, so that a set is stored
+ * as a bitset and sets can be matched against each other with a single AND. The tags are also kept in the order they
+ * were first added.
+ */
+public final class TagSet {
+	private static final Map<String, Integer> TAG_IDS = new HashMap<>();
+
+	public static final TagSet EMPTY = new TagSet(new int[0], new String[0], new long[0]);
+
+	// tag ids and names in the order they were added
+	private final int[] ids;
+	private final String[] names;
+	private final long[] bits;
+
+	private TagSet(int[] ids, String[] names, long[] bits) {
+		this.ids = ids;
+		this.names = names;
+		this.bits = bits;
+	}
+
+	public static synchronized int intern(String tag) {
+		Integer id = TAG_IDS.get(tag);
+		if (id == null) {
+			id = TAG_IDS.size();
+			TAG_IDS.put(tag, id);
+		}
+		return id;
+	}
+
+	public static TagSet of(Collection<String> tags) {
+		if (tags.isEmpty()) {
+			return EMPTY;
+		}
+		int[] ids = new int[tags.size()];
+		String[] names = new String[tags.size()];
+		int size = 0;
+		long[] bits = new long[0];
+		for (String tag : tags) {
+			int id = intern(tag);
+			if (id >> 6 >= bits.length) {
+				bits = Arrays.copyOf(bits, (id >> 6) + 1);
+			}
+			if ((bits[id >> 6] & (1L << id)) == 0) {
+				bits[id >> 6] |= 1L << id;
+				ids[size] = id;
+				names[size++] = tag;
+			}
+		}
+		return new TagSet(Arrays.copyOf(ids, size), Arrays.copyOf(names, size), bits);
+	}
+
+	/**
+	 * Returns a set with the tags of this set followed by the tags of the other set
+	 */
+	public TagSet union(TagSet other) {
+		if (other.ids.length == 0) {
+			return this;
+		}
+		if (ids.length == 0) {
+			return other;
+		}
+		int[] newIds = Arrays.copyOf(ids, ids.length + other.ids.length);
+		String[] newNames = Arrays.copyOf(names, newIds.length);
+		int size = ids.length;
+		long[] newBits = Arrays.copyOf(bits, Math.max(bits.length, other.bits.length));
+		for (int i = 0; i < other.ids.length; i++) {
+			int id = other.ids[i];
+			if ((newBits[id >> 6] & (1L << id)) == 0) {
+				newBits[id >> 6] |= 1L << id;
+				newIds[size] = id;
+				newNames[size++] = other.names[i];
+			}
+		}
+		return size == ids.length ? this : new TagSet(Arrays.copyOf(newIds, size), Arrays.copyOf(newNames, size), newBits);
+	}
+
+	public boolean intersects(TagSet other) {
+		int length = Math.min(bits.length, other.bits.length);
+		for (int i = 0; i < length; i++) {
+			if ((bits[i] & other.bits[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Gets the name of the tag at the given index, in the order the tags were added
+	 */
+	public String get(int index) {
+		return names[index];
+	}
+
+	public List<String> toList() {
+		return List.of(names);
+	}
+
+	@Override
+	public String toString() {
+		return toList().toString();
+	}
+}
@@ -0,0 +1,119 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
+
+/**
+ * Holds the blocks written to a square, chunk aligned tile of the cave during parallel generation, until they are
+ * joined back into the main context.
+ */
+public class TileBuffer {
+	public static final int SIZE_CHUNKS = 2;
+	public static final int SIZE = SIZE_CHUNKS * 16;
+
+	private final int tileX;
+	private final int tileZ;
+	private final int minX;
+	private final int minZ;
+	// block state ordinals + 1 per section, 0 meaning the block hasn't been written
+	private final char[][] sections = new char[SIZE_CHUNKS * SIZE_CHUNKS * 16][];
+
+	public TileBuffer(int tileX, int tileZ) {
+		this.tileX = tileX;
+		this.tileZ = tileZ;
+		this.minX = tileX * SIZE;
+		this.minZ = tileZ * SIZE;
+	}
+
+	public static int tileOf(int blockCoord) {
+		return Math.floorDiv(blockCoord, SIZE);
+	}
+
+	public int getTileX() {
+		return tileX;
+	}
+
+	public int getTileZ() {
+		return tileZ;
+	}
+
+	public int getMinX() {
+		return minX;
+	}
+
+	public int getMinZ() {
+		return minZ;
+	}
+
+	public int getMaxX() {
+		return minX + SIZE - 1;
+	}
+
+	public int getMaxZ() {
+		return minZ + SIZE - 1;
+	}
+
+	private static int sectionIndex(int localX, int y, int localZ) {
+		return ((localX >> 4) * SIZE_CHUNKS + (localZ >> 4)) * 16 + (y >> 4);
+	}
+
+	private static int indexInSection(int x, int y, int z) {
+		return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+	}
+
+	/**
+	 * Gets the block written at the given position, or null if no block has been written there
+	 */
+	public BlockState getBlock(int x, int y, int z) {
+		int localX = x - minX;
+		int localZ = z - minZ;
+		if (localX < 0 || localX >= SIZE || localZ < 0 || localZ >= SIZE || y < 0 || y > 255) {
+			return null;
+		}
+		char[] section = sections[sectionIndex(localX, y, localZ)];
+		if (section == null) {
+			return null;
+		}
+		char value = section[indexInSection(x, y, z)];
+		return value == 0 ? null : BlockTypesCache.states[value - 1];
+	}
+
+	/**
+	 * Sets the block at the given position, returning false if the position is outside this tile
+	 */
+	public boolean setBlock(int x, int y, int z, BlockState block) {
+		int localX = x - minX;
+		int localZ = z - minZ;
+		if (localX < 0 || localX >= SIZE || localZ < 0 || localZ >= SIZE || y < 0 || y > 255) {
+			return false;
+		}
+		int sectionIndex = sectionIndex(localX, y, localZ);
+		char[] section = sections[sectionIndex];
+		if (section == null) {
+			section = sections[sectionIndex] = new char[4096];
+		}
+		section[indexInSection(x, y, z)] = (char) (block.getOrdinal() + 1);
+		return true;
+	}
+
+	/**
+	 * Passes every written block to the consumer, section by section
+	 */
+	public void forEach(PackedBlockStorage.BlockConsumer consumer) {
+		for (int sectionIndex = 0; sectionIndex < sections.length; sectionIndex++) {
+			char[] section = sections[sectionIndex];
+			if (section == null) {
+				continue;
+			}
+			int baseX = minX + (sectionIndex / 16 / SIZE_CHUNKS) * 16;
+			int baseZ = minZ + (sectionIndex / 16 % SIZE_CHUNKS) * 16;
+			int baseY = (sectionIndex % 16) * 16;
+			for (int index = 0; index < 4096; index++) {
+				char value = section[index];
+				if (value != 0) {
+					consumer.accept(baseX | (index & 15), baseY | (index >> 8), baseZ | ((index >> 4) & 15), BlockTypesCache.states[value - 1]);
+				}
+			}
+		}
+	}
+}
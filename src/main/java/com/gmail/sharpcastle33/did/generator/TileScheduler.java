@@ -0,0 +1,113 @@
+package com.gmail.sharpcastle33.did.generator;
+
+import org.bukkit.Bukkit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.stream.IntStream;
+
+/**
+ * Runs carving and smoothing in parallel, split into {@link TileBuffer tiles}. Each tile processes the centroids that
+ * overlap it in order, clipped to the tile, using a random stream keyed by the pass and the tile position. Reads outside
+ * the tile see the state from before the pass, so the result doesn't depend on scheduling.
+ */
+public class TileScheduler {
+	public static void carve(CaveGenContext ctx, List<Centroid> centroids) {
+		runTiled(ctx, centroids, RandomStreams.Stage.CARVE, 0, (tileCtx, centroidIndexes, minRoomY, maxRoomY, tile) -> {
+			for (int centroidIndex : centroidIndexes) {
+				ModuleGenerator.deleteCentroid(tileCtx, centroids.get(centroidIndex), minRoomY[centroidIndex], maxRoomY[centroidIndex],
+						tile.getMinX(), tile.getMaxX(), tile.getMinZ(), tile.getMaxZ());
+			}
+		});
+	}
+
+	public static void smooth(CaveGenContext ctx, List<Centroid> centroids) {
+		runTiled(ctx, centroids, RandomStreams.Stage.SMOOTH, 2, (tileCtx, centroidIndexes, minRoomY, maxRoomY, tile) -> {
+			// smooth each room overlapping the tile in one sweep
+			int roomStart = 0;
+			while (roomStart < centroidIndexes.size()) {
+				int roomIndex = centroids.get(centroidIndexes.get(roomStart)).roomIndex;
+				int roomEnd = roomStart;
+				while (roomEnd < centroidIndexes.size() && centroids.get(centroidIndexes.get(roomEnd)).roomIndex == roomIndex) {
+					roomEnd++;
+				}
+				int[] roomCentroidIndexes = centroidIndexes.subList(roomStart, roomEnd).stream().mapToInt(Integer::intValue).toArray();
+				int firstIndex = roomCentroidIndexes[0];
+				SmoothingPass.smoothRoom(tileCtx, centroids, roomCentroidIndexes, minRoomY[firstIndex], maxRoomY[firstIndex], i -> tileCtx,
+						tile.getMinX(), tile.getMaxX(), tile.getMinZ(), tile.getMaxZ());
+				roomStart = roomEnd;
+			}
+		});
+	}
+
+	private static void runTiled(CaveGenContext ctx, List<Centroid> centroids, RandomStreams.Stage stage, int extraRadius, Kernel kernel) {
+		int[] minRoomY = new int[centroids.size()];
+		int[] maxRoomY = new int[centroids.size()];
+		computeRoomBounds(centroids, minRoomY, maxRoomY);
+
+		// tiles sorted by (x, z), each with the indexes of the centroids overlapping it in order
+		Map<Long, List<Integer>> centroidsByTile = new TreeMap<>();
+		for (int i = 0; i < centroids.size(); i++) {
+			Centroid centroid = centroids.get(i);
+			int r = centroid.size + extraRadius;
+			int x = centroid.pos.getBlockX();
+			int z = centroid.pos.getBlockZ();
+			for (int tileX = TileBuffer.tileOf(x - r); tileX <= TileBuffer.tileOf(x + r); tileX++) {
+				for (int tileZ = TileBuffer.tileOf(z - r); tileZ <= TileBuffer.tileOf(z + r); tileZ++) {
+					centroidsByTile.computeIfAbsent(tileKey(tileX, tileZ), k -> new ArrayList<>()).add(i);
+				}
+			}
+		}
+
+		long[] tileKeys = centroidsByTile.keySet().stream().mapToLong(Long::longValue).toArray();
+		CaveGenContext[] forks = new CaveGenContext[tileKeys.length];
+		IntStream.range(0, tileKeys.length).parallel().forEach(tileIndex -> {
+			long key = tileKeys[tileIndex];
+			TileBuffer tile = new TileBuffer((int) (key >> 32), (int) key);
+			CaveGenContext fork = ctx.forkForTile(tile, stage, key);
+			kernel.apply(fork, centroidsByTile.get(key), minRoomY, maxRoomY, tile);
+			forks[tileIndex] = fork;
+		});
+
+		for (CaveGenContext fork : forks) {
+			ctx.joinFork(fork);
+		}
+
+		if (ctx.isDebug()) {
+			Bukkit.getLogger().log(Level.INFO, "Processed " + tileKeys.length + " tiles in parallel");
+		}
+	}
+
+	private static void computeRoomBounds(List<Centroid> centroids, int[] minRoomY, int[] maxRoomY) {
+		int roomStart = 0;
+		while (roomStart < centroids.size()) {
+			int roomIndex = centroids.get(roomStart).roomIndex;
+			int roomEnd = roomStart;
+			while (roomEnd < centroids.size() && centroids.get(roomEnd).roomIndex == roomIndex) {
+				roomEnd++;
+			}
+
+			List<Centroid> roomCentroids = centroids.subList(roomStart, roomEnd);
+			int min = roomCentroids.stream().mapToInt(centroid -> centroid.pos.getBlockY() - centroid.size).min().orElse(0);
+			int max = roomCentroids.stream().mapToInt(centroid -> centroid.pos.getBlockY() + centroid.size).max().orElse(255);
+			for (int i = roomStart; i < roomEnd; i++) {
+				minRoomY[i] = min;
+				maxRoomY[i] = max;
+			}
+
+			roomStart = roomEnd;
+		}
+	}
+
+	private static long tileKey(int tileX, int tileZ) {
+		return (long) tileX << 32 | (tileZ & 0xffffffffL);
+	}
+
+	@FunctionalInterface
+	private interface Kernel {
+		void apply(CaveGenContext ctx, List<Integer> centroidIndexes, int[] minRoomY, int[] maxRoomY, TileBuffer tile);
+	}
+}
@@ -3,10 +3,8 @@ package com.gmail.sharpcastle33.did.generator.painter;
 import com.gmail.sharpcastle33.did.config.ConfigUtil;
 import com.gmail.sharpcastle33.did.generator.CaveGenContext;
 import com.gmail.sharpcastle33.did.generator.Centroid;
-import com.gmail.sharpcastle33.did.generator.PostProcessor;
 import com.gmail.sharpcastle33.did.provider.BlockPredicate;
 import com.gmail.sharpcastle33.did.provider.BlockProvider;
-import com.sk89q.worldedit.math.BlockVector3;
 import org.bukkit.configuration.ConfigurationSection;
 
 public class FloorLayerStep extends SimplePainterStep {
@@ -20,8 +18,8 @@ public class FloorLayerStep extends SimplePainterStep {
 	}
 
 	@Override
-	protected boolean canEverApplyToPos(CaveGenContext ctx, BlockVector3 pos) {
-		return PostProcessor.isFloor(ctx, pos) && canPlaceOn.test(ctx.getBlock(pos));
+	protected boolean canEverApplyToPos(CaveGenContext ctx, PaintScan scan, int index) {
+		return scan.isFloor(index) && canPlaceOn.test(ctx.getBlock(scan.getX(index), scan.getY(index), scan.getZ(index)));
 	}
 
 	@Override
@@ -30,7 +28,7 @@ public class FloorLayerStep extends SimplePainterStep {
 	}
 
 	@Override
-	protected void applyToBlock(CaveGenContext ctx, BlockVector3 pos, Centroid centroid) {
-		ctx.setBlock(pos.add(0, 1, 0), block.get(ctx, centroid));
+	protected void applyToBlock(CaveGenContext ctx, int x, int y, int z, Centroid centroid) {
+		ctx.setBlock(x, y + 1, z, block.get(ctx, centroid));
 	}
 }
@@ -0,0 +1,134 @@
+package com.gmail.sharpcastle33.did.generator.painter;
+
+import com.gmail.sharpcastle33.did.generator.CaveGenContext;
+import com.gmail.sharpcastle33.did.generator.Centroid;
+import com.gmail.sharpcastle33.did.generator.SphereOffsets;
+import com.sk89q.worldedit.math.BlockVector3;
+
+/**
+ * The blocks in the painting sphere of a centroid, classified once for all the painter steps applied to that centroid.
+ * Blocks next to a block written by an earlier step are classified again when they are next looked at, so each step
+ * sees the same results as if it had scanned the sphere itself.
+ */
+public final class PaintScan {
+	private static final byte SOLID = 1;
+	private static final byte FLOOR = 2;
+	private static final byte ROOF = 4;
+
+	private final CaveGenContext ctx;
+	private final int centerX;
+	private final int centerY;
+	private final int centerZ;
+	private final int radius;
+	private final int diameter;
+	private final SphereOffsets offsets;
+	// whether each block is solid, a floor or a roof, indexed like the offsets
+	private final byte[] solidity;
+	// whether the classification of each block in the bounding box of the sphere is out of date
+	private final boolean[] stale;
+
+	public PaintScan(CaveGenContext ctx, Centroid centroid) {
+		this.ctx = ctx;
+		BlockVector3 center = centroid.pos.toBlockPoint();
+		this.centerX = center.getBlockX();
+		this.centerY = center.getBlockY();
+		this.centerZ = center.getBlockZ();
+		this.radius = Math.max(0, centroid.size + 4);
+		this.diameter = 2 * radius + 1;
+		this.offsets = SphereOffsets.get(SphereOffsets.Shape.PAINT, centroid.size + 4);
+		this.solidity = new byte[offsets.size()];
+		this.stale = new boolean[diameter * diameter * diameter];
+		for (int i = 0; i < solidity.length; i++) {
+			solidity[i] = classify(getX(i), getY(i), getZ(i));
+		}
+		ctx.setWriteListener((x, y, z, block) -> {
+			markStale(x, y - 1, z);
+			markStale(x, y, z);
+			markStale(x, y + 1, z);
+		});
+	}
+
+	/**
+	 * Stops tracking the blocks written by the painter steps
+	 */
+	public void finish() {
+		ctx.setWriteListener(null);
+	}
+
+	private byte classify(int x, int y, int z) {
+		if (ctx.isTransparent(x, y, z)) {
+			return 0;
+		}
+		byte flags = SOLID;
+		if (ctx.isFloor(x, y, z)) {
+			flags |= FLOOR;
+		} else if (ctx.isCeiling(x, y, z)) {
+			flags |= ROOF;
+		}
+		return flags;
+	}
+
+	private int boxIndex(int x, int y, int z) {
+		int lx = x - centerX + radius;
+		int ly = y - centerY + radius;
+		int lz = z - centerZ + radius;
+		if (lx < 0 || lx >= diameter || ly < 0 || ly >= diameter || lz < 0 || lz >= diameter) {
+			return -1;
+		}
+		return (ly * diameter + lz) * diameter + lx;
+	}
+
+	private void markStale(int x, int y, int z) {
+		int index = boxIndex(x, y, z);
+		if (index >= 0) {
+			stale[index] = true;
+		}
+	}
+
+	private int getSolidity(int index) {
+		int boxIndex = boxIndex(getX(index), getY(index), getZ(index));
+		if (stale[boxIndex]) {
+			stale[boxIndex] = false;
+			solidity[index] = classify(getX(index), getY(index), getZ(index));
+		}
+		return solidity[index];
+	}
+
+	public SphereOffsets getOffsets() {
+		return offsets;
+	}
+
+	public int getCenterY() {
+		return centerY;
+	}
+
+	public int getX(int index) {
+		return centerX + offsets.getX(index);
+	}
+
+	public int getY(int index) {
+		return centerY + offsets.getY(index);
+	}
+
+	public int getZ(int index) {
+		return centerZ + offsets.getZ(index);
+	}
+
+	public boolean isSolid(int index) {
+		return (getSolidity(index) & SOLID) != 0;
+	}
+
+	/**
+	 * Same as {@link com.gmail.sharpcastle33.did.generator.PostProcessor#isFloor(CaveGenContext, int, int, int)}
+	 */
+	public boolean isFloor(int index) {
+		return (getSolidity(index) & FLOOR) != 0;
+	}
+
+	/**
+	 * Same as {@link com.gmail.sharpcastle33.did.generator.PostProcessor#isRoof(CaveGenContext, int, int, int)}
+	 */
+	public boolean isRoof(int index) {
+		return (getSolidity(index) & ROOF) != 0;
+	}
+}
@@ -3,23 +3,24 @@ package com.gmail.sharpcastle33.did.generator.painter;
 import com.gmail.sharpcastle33.did.config.ConfigUtil;
 import com.gmail.sharpcastle33.did.generator.CaveGenContext;
 import com.gmail.sharpcastle33.did.generator.Centroid;
+import com.gmail.sharpcastle33.did.generator.TagSet;
 import com.sk89q.worldedit.MaxChangedBlocksException;
-import com.sk89q.worldedit.math.BlockVector3;
 import org.bukkit.configuration.ConfigurationSection;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
-import java.util.function.Predicate;
 
 public abstract class PainterStep {
 	private final PainterStepType type;
 	private final List<String> tags;
+	private final TagSet tagSet;
 	private final boolean tagsInverted;
 
 	public PainterStep(PainterStepType type, ConfigurationSection map) {
 		this.type = type;
 		this.tags = ConfigUtil.deserializeSingleableList(map.get("tags"), Function.identity(), ArrayList::new);
+		this.tagSet = TagSet.of(tags);
 		this.tagsInverted = map.getBoolean("tagsInverted", !map.contains("tags"));
 	}
 
@@ -31,6 +32,10 @@ public abstract class PainterStep {
 		return tags;
 	}
 
+	public final TagSet getTagSet() {
+		return tagSet;
+	}
+
 	public boolean areTagsInverted() {
 		return tagsInverted;
 	}
@@ -40,6 +45,14 @@ public abstract class PainterStep {
 		return type.parse(map);
 	}
 
-	public abstract void apply(CaveGenContext ctx, Centroid centroid, Predicate<BlockVector3> canTryToPaint) throws MaxChangedBlocksException;
+	public abstract void apply(CaveGenContext ctx, Centroid centroid, PaintScan scan, PaintMask mask) throws MaxChangedBlocksException;
+
+	@FunctionalInterface
+	public interface PaintMask {
+		/**
+		 * Returns whether the block at the given position may be painted, recording it as painted if so
+		 */
+		boolean tryPaint(int x, int y, int z);
+	}
 
 }
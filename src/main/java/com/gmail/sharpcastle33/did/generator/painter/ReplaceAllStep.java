@@ -5,7 +5,6 @@ import com.gmail.sharpcastle33.did.generator.CaveGenContext;
 import com.gmail.sharpcastle33.did.generator.Centroid;
 import com.gmail.sharpcastle33.did.provider.BlockPredicate;
 import com.gmail.sharpcastle33.did.provider.BlockProvider;
-import com.sk89q.worldedit.math.BlockVector3;
 import org.bukkit.configuration.ConfigurationSection;
 
 public class ReplaceAllStep extends SimplePainterStep {
@@ -21,9 +20,9 @@ public class ReplaceAllStep extends SimplePainterStep {
 	}
 
 	@Override
-	protected void applyToBlock(CaveGenContext ctx, BlockVector3 pos, Centroid centroid) {
-		if (old.test(ctx.getBlock(pos)) && ctx.rand.nextDouble() < chance) {
-			ctx.setBlock(pos, _new.get(ctx, centroid));
+	protected void applyToBlock(CaveGenContext ctx, int x, int y, int z, Centroid centroid) {
+		if (old.test(ctx.getBlock(x, y, z)) && ctx.rand.nextDouble() < chance) {
+			ctx.setBlock(x, y, z, _new.get(ctx, centroid));
 		}
 	}
 }
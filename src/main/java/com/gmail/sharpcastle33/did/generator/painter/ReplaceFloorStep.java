@@ -3,10 +3,8 @@ package com.gmail.sharpcastle33.did.generator.painter;
 import com.gmail.sharpcastle33.did.config.ConfigUtil;
 import com.gmail.sharpcastle33.did.generator.CaveGenContext;
 import com.gmail.sharpcastle33.did.generator.Centroid;
-import com.gmail.sharpcastle33.did.generator.PostProcessor;
 import com.gmail.sharpcastle33.did.provider.BlockPredicate;
 import com.gmail.sharpcastle33.did.provider.BlockProvider;
-import com.sk89q.worldedit.math.BlockVector3;
 import org.bukkit.configuration.ConfigurationSection;
 
 public class ReplaceFloorStep extends SimplePainterStep {
@@ -27,14 +25,14 @@ public class ReplaceFloorStep extends SimplePainterStep {
 	}
 
 	@Override
-	protected boolean canEverApplyToPos(CaveGenContext ctx, BlockVector3 pos) {
-		return PostProcessor.isFloor(ctx, pos);
+	protected boolean canEverApplyToPos(CaveGenContext ctx, PaintScan scan, int index) {
+		return scan.isFloor(index);
 	}
 
 	@Override
-	protected void applyToBlock(CaveGenContext ctx, BlockVector3 pos, Centroid centroid) {
-		if (old.test(ctx.getBlock(pos)) && ctx.rand.nextDouble() < chance) {
-			ctx.setBlock(pos, _new.get(ctx, centroid));
+	protected void applyToBlock(CaveGenContext ctx, int x, int y, int z, Centroid centroid) {
+		if (old.test(ctx.getBlock(x, y, z)) && ctx.rand.nextDouble() < chance) {
+			ctx.setBlock(x, y, z, _new.get(ctx, centroid));
 		}
 	}
 }
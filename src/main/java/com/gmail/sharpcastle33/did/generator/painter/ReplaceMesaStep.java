@@ -4,15 +4,12 @@ import com.gmail.sharpcastle33.did.config.BlockTypeRange;
 import com.gmail.sharpcastle33.did.config.ConfigUtil;
 import com.gmail.sharpcastle33.did.generator.CaveGenContext;
 import com.gmail.sharpcastle33.did.generator.Centroid;
-import com.gmail.sharpcastle33.did.generator.PostProcessor;
+import com.gmail.sharpcastle33.did.generator.SphereOffsets;
 import com.gmail.sharpcastle33.did.provider.BlockPredicate;
 import com.gmail.sharpcastle33.did.provider.BlockProvider;
 import com.sk89q.worldedit.MaxChangedBlocksException;
-import com.sk89q.worldedit.math.BlockVector3;
 import org.bukkit.configuration.ConfigurationSection;
 
-import java.util.function.Predicate;
-
 public class ReplaceMesaStep extends PainterStep {
 	private final BlockPredicate old;
 	private final BlockTypeRange<Integer> mesaLayers;
@@ -24,30 +21,21 @@ public class ReplaceMesaStep extends PainterStep {
 	}
 
 	@Override
-	public void apply(CaveGenContext ctx, Centroid centroid, Predicate<BlockVector3> canTryToPaint) throws MaxChangedBlocksException {
-		BlockVector3 center = centroid.pos.toBlockPoint();
-		int x = center.getBlockX();
-		int y = center.getBlockY();
-		int z = center.getBlockZ();
+	public void apply(CaveGenContext ctx, Centroid centroid, PaintScan scan, PaintMask mask) throws MaxChangedBlocksException {
 		int radius = centroid.size + 4;
+		int y = scan.getCenterY();
+		SphereOffsets offsets = scan.getOffsets();
 
 		for (int ty = -radius; ty <= radius; ty++) {
-			BlockProvider replacement = mesaLayers.get(ty + y);
+			BlockProvider replacement = mesaLayers.getInt(ty + y);
 			if (replacement == null) {
 				continue;
 			}
-			for (int tx = -radius; tx <= radius; tx++) {
-				for (int tz = -radius; tz <= radius; tz++) {
-					if (tx * tx  +  ty * ty  +  tz * tz <= (radius - 2) * (radius - 2)) {
-						if(tx == 0 && tz == 0 && Math.abs(tx + ty + tz) == radius - 2) {
-							continue;
-						}
-
-						BlockVector3 pos = BlockVector3.at(tx+x, ty+y, tz+z);
-						if (!ctx.style.isTransparentBlock(ctx.getBlock(pos)) && old.test(ctx.getBlock(pos)) && !PostProcessor.isFloor(ctx, pos) && canTryToPaint.test(pos)) {
-							ctx.setBlock(pos, replacement.get(ctx, centroid));
-						}
-					}
+			for (int i = offsets.indexOfY(ty), end = offsets.indexOfY(ty + 1); i < end; i++) {
+				int bx = scan.getX(i);
+				int bz = scan.getZ(i);
+				if (scan.isSolid(i) && old.test(ctx.getBlock(bx, ty+y, bz)) && !scan.isFloor(i) && mask.tryPaint(bx, ty+y, bz)) {
+					ctx.setBlock(bx, ty+y, bz, replacement.get(ctx, centroid));
 				}
 			}
 		}
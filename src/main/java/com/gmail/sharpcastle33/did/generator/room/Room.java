@@ -4,6 +4,7 @@ import com.gmail.sharpcastle33.did.config.ConfigUtil;
 import com.gmail.sharpcastle33.did.generator.CaveGenContext;
 import com.gmail.sharpcastle33.did.generator.Centroid;
 import com.gmail.sharpcastle33.did.generator.ModuleGenerator;
+import com.gmail.sharpcastle33.did.generator.TagSet;
 import com.sk89q.worldedit.math.Vector3;
 import org.bukkit.configuration.ConfigurationSection;
 
@@ -15,17 +16,20 @@ public abstract class Room {
 	private final char symbol;
 	private final RoomType type;
 	private final List<String> tags;
+	private final TagSet tagSet;
 
 	public Room(char symbol, RoomType type, List<String> tags) {
 		this.symbol = symbol;
 		this.type = type;
 		this.tags = tags;
+		this.tagSet = TagSet.of(tags);
 	}
 
 	public Room(char symbol, RoomType type, ConfigurationSection map) {
 		this.symbol = symbol;
 		this.type = type;
 		this.tags = ConfigUtil.deserializeSingleableList(map.get("tags"), Function.identity(), ArrayList::new);
+		this.tagSet = TagSet.of(tags);
 	}
 
 	public char getSymbol() {
@@ -36,6 +40,10 @@ public abstract class Room {
 		return tags;
 	}
 
+	public TagSet getTagSet() {
+		return tagSet;
+	}
+
 	public Object[] createUserData(CaveGenContext ctx, RoomData roomData) {
 		return null;
 	}
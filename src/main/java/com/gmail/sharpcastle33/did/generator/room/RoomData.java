@@ -1,5 +1,6 @@
 package com.gmail.sharpcastle33.did.generator.room;
 
+import com.gmail.sharpcastle33.did.generator.TagSet;
 import com.sk89q.worldedit.math.Vector3;
 
 import java.util.List;
@@ -8,11 +9,11 @@ public final class RoomData {
 	public final Vector3 location;
 	public final Vector3 direction;
 	public final int caveRadius;
-	public final List<String> tags;
+	public final TagSet tags;
 	public final List<List<Vector3>> roomLocations;
 	public final int roomIndex;
 
-	public RoomData(Vector3 location, Vector3 direction, int caveRadius, List<String> tags, List<List<Vector3>> roomLocations, int roomIndex) {
+	public RoomData(Vector3 location, Vector3 direction, int caveRadius, TagSet tags, List<List<Vector3>> roomLocations, int roomIndex) {
 		this.location = location;
 		this.direction = direction;
 		this.caveRadius = caveRadius;
@@ -33,7 +34,7 @@ public final class RoomData {
 		return new RoomData(location, direction, caveRadius, tags, roomLocations, roomIndex);
 	}
 
-	public RoomData withTags(List<String> tags) {
+	public RoomData withTags(TagSet tags) {
 		return new RoomData(location, direction, caveRadius, tags, roomLocations, roomIndex);
 	}
 
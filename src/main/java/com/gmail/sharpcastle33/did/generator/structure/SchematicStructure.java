@@ -4,6 +4,7 @@ import com.gmail.sharpcastle33.did.DescentIntoDarkness;
 import com.gmail.sharpcastle33.did.Util;
 import com.gmail.sharpcastle33.did.config.ConfigUtil;
 import com.gmail.sharpcastle33.did.config.InvalidConfigException;
+import com.gmail.sharpcastle33.did.config.SchematicData;
 import com.gmail.sharpcastle33.did.generator.CaveGenContext;
 import com.gmail.sharpcastle33.did.generator.Centroid;
 import com.sk89q.worldedit.WorldEditException;
@@ -11,13 +12,14 @@ import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.function.operation.Operation;
 import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.math.BlockVector3;
-import com.sk89q.worldedit.math.transform.Transform;
 import com.sk89q.worldedit.session.ClipboardHolder;
 import com.sk89q.worldedit.util.Direction;
+import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import com.sk89q.worldedit.world.block.BlockTypes;
 import org.bukkit.configuration.ConfigurationSection;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class SchematicStructure extends Structure {
@@ -26,15 +28,15 @@ public class SchematicStructure extends Structure {
 
 	public SchematicStructure(String name, ConfigurationSection map) {
 		super(name, StructureType.SCHEMATIC, map);
+		this.ignoreAir = map.getBoolean("ignoreAir", true);
 		this.schematics = ConfigUtil.deserializeSingleableList(ConfigUtil.require(map, "schematics"),
 				schematicName -> {
-			Clipboard data = DescentIntoDarkness.instance.getSchematic(schematicName);
+			SchematicData data = DescentIntoDarkness.instance.getSchematics().get(schematicName);
 			if (data == null) {
 				throw new InvalidConfigException("Unknown schematic: " + schematicName);
 			}
-			return new Schematic(schematicName, data);
+			return new Schematic(schematicName, data, ignoreAir);
 		}, () -> null);
-		this.ignoreAir = map.getBoolean("ignoreAir", true);
 	}
 
 	@Override
@@ -50,15 +52,26 @@ public class SchematicStructure extends Structure {
 	@Override
 	public boolean place(CaveGenContext ctx, BlockVector3 pos, Centroid centroid, boolean force) throws WorldEditException {
 		Schematic chosenSchematic = schematics.get(ctx.rand.nextInt(schematics.size()));
-		ClipboardHolder clipboardHolder = new ClipboardHolder(chosenSchematic.data);
+		Template template = chosenSchematic.getTemplate();
 
 		BlockVector3 to = pos.subtract(getOriginPositionSide().toBlockVector());
-		if (!force && !canPlace(ctx, to, chosenSchematic.data, clipboardHolder.getTransform())) {
+		if (!force && !canPlace(ctx, to, template)) {
 			return false;
 		}
 
-		Operation paste = clipboardHolder.createPaste(ctx.asExtent()).to(to).ignoreAirBlocks(ignoreAir).build();
-		Operations.complete(paste);
+		Clipboard entitySource = chosenSchematic.data.getEntitySource();
+		if (entitySource != null) {
+			// let WorldEdit copy the entities along with the blocks
+			ClipboardHolder clipboardHolder = new ClipboardHolder(entitySource);
+			Operation paste = clipboardHolder.createPaste(ctx.asExtent()).to(to).ignoreAirBlocks(ignoreAir).build();
+			Operations.complete(paste);
+		} else {
+			int[] offsets = template.pastedOffsets;
+			BlockState[] blocks = template.pastedBlocks;
+			for (int i = 0; i < blocks.length; i++) {
+				ctx.setBlock(to.getX() + offsets[i * 3], to.getY() + offsets[i * 3 + 1], to.getZ() + offsets[i * 3 + 2], blocks[i]);
+			}
+		}
 		if (ctx.isDebug()) {
 			ctx.setBlock(to, Util.requireDefaultState(BlockTypes.DIAMOND_BLOCK));
 		}
@@ -66,14 +79,10 @@ public class SchematicStructure extends Structure {
 		return true;
 	}
 
-	private boolean canPlace(CaveGenContext ctx, BlockVector3 to, Clipboard schematic, Transform transform) {
-		for (BlockVector3 pos : schematic.getRegion()) {
-			if (schematic.getBlock(pos).getBlockType() == BlockTypes.AIR) {
-				continue;
-			}
-			BlockVector3 destPos =
-					transform.apply(pos.subtract(schematic.getOrigin()).toVector3()).toBlockPoint().add(to);
-			BlockStateHolder<?> block = ctx.getBlock(destPos);
+	private boolean canPlace(CaveGenContext ctx, BlockVector3 to, Template template) {
+		int[] offsets = template.checkedOffsets;
+		for (int i = 0; i < offsets.length; i += 3) {
+			BlockStateHolder<?> block = ctx.getBlock(to.getX() + offsets[i], to.getY() + offsets[i + 1], to.getZ() + offsets[i + 2]);
 			if (!canReplace(ctx, block)) {
 				return false;
 			}
@@ -83,11 +92,65 @@ public class SchematicStructure extends Structure {
 
 	public static class Schematic {
 		private final String name;
-		private final Clipboard data;
+		private final SchematicData data;
+		private final boolean ignoreAir;
+		// compiled lazily, computing it twice concurrently is harmless
+		private volatile Template template;
 
-		private Schematic(String name, Clipboard data) {
+		private Schematic(String name, SchematicData data, boolean ignoreAir) {
 			this.name = name;
 			this.data = data;
+			this.ignoreAir = ignoreAir;
+		}
+
+		private Template getTemplate() {
+			Template template = this.template;
+			if (template == null) {
+				template = new Template(data, ignoreAir);
+				this.template = template;
+			}
+			return template;
+		}
+	}
+
+	/**
+	 * The blocks of a schematic as flat arrays of offsets from its origin. Rotations are applied by the context's
+	 * transform, which is an integer matrix and a cached block state lookup for axis aligned rotations.
+	 */
+	private static final class Template {
+		// the blocks whose destination has to be replaceable, which are all blocks except air
+		private final int[] checkedOffsets;
+		// the blocks that are pasted, which excludes all kinds of air if air is ignored
+		private final int[] pastedOffsets;
+		private final BlockState[] pastedBlocks;
+
+		private Template(SchematicData schematic, boolean ignoreAir) {
+			List<BlockVector3> checkedOffsets = new ArrayList<>();
+			List<BlockVector3> pastedOffsets = new ArrayList<>();
+			List<BlockState> pastedBlocks = new ArrayList<>();
+			schematic.forEachBlock((x, y, z, block) -> {
+				if (block.getBlockType() != BlockTypes.AIR) {
+					checkedOffsets.add(BlockVector3.at(x, y, z));
+				}
+				if (!ignoreAir || !block.getBlockType().getMaterial().isAir()) {
+					pastedOffsets.add(BlockVector3.at(x, y, z));
+					pastedBlocks.add(block);
+				}
+			});
+			this.checkedOffsets = flatten(checkedOffsets);
+			this.pastedOffsets = flatten(pastedOffsets);
+			this.pastedBlocks = pastedBlocks.toArray(new BlockState[0]);
+		}
+
+		private static int[] flatten(List<BlockVector3> offsets) {
+			int[] result = new int[offsets.size() * 3];
+			for (int i = 0; i < offsets.size(); i++) {
+				BlockVector3 offset = offsets.get(i);
+				result[i * 3] = offset.getX();
+				result[i * 3 + 1] = offset.getY();
+				result[i * 3 + 2] = offset.getZ();
+			}
+			return result;
 		}
 	}
 }
@@ -4,6 +4,7 @@ import com.gmail.sharpcastle33.did.config.ConfigUtil;
 import com.gmail.sharpcastle33.did.config.InvalidConfigException;
 import com.gmail.sharpcastle33.did.generator.CaveGenContext;
 import com.gmail.sharpcastle33.did.generator.Centroid;
+import com.gmail.sharpcastle33.did.generator.TagSet;
 import com.gmail.sharpcastle33.did.provider.BlockPredicate;
 import com.google.common.collect.Lists;
 import com.sk89q.worldedit.WorldEditException;
@@ -35,6 +36,7 @@ public abstract class Structure {
 	private final boolean shouldTransformPosition;
 	private final boolean randomRotation;
 	private final List<String> tags;
+	private final TagSet tagSet;
 	private final boolean tagsInverted;
 
 	protected Structure(String name, StructureType type, ConfigurationSection map) {
@@ -71,6 +73,7 @@ public abstract class Structure {
 		this.shouldTransformPosition = map.getBoolean("shouldTransformPosition", shouldTransformPositionByDefault());
 		this.randomRotation = map.getBoolean("randomRotation", true);
 		this.tags = ConfigUtil.deserializeSingleableList(map.get("tags"), Function.identity(), ArrayList::new);
+		this.tagSet = TagSet.of(tags);
 		this.tagsInverted = map.getBoolean("tagsInverted", !map.contains("tags"));
 		computeValidDirections();
 	}
@@ -260,6 +263,10 @@ public abstract class Structure {
 		return tags;
 	}
 
+	public TagSet getTagSet() {
+		return tagSet;
+	}
+
 	public boolean areTagsInverted() {
 		return tagsInverted;
 	}
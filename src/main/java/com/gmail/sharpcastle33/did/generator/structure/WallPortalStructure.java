@@ -155,7 +155,7 @@ public class WallPortalStructure extends Structure {
 
 	private boolean isPortalClearBlock(CaveGenContext ctx, BlockVector3 pos) {
 		if (portalClearBlocks == null) {
-			return ctx.style.isTransparentBlock(ctx.getBlock(pos));
+			return ctx.isTransparent(pos);
 		}
 		return portalClearBlocks.test(ctx.getBlock(pos));
 	}
@@ -13,14 +13,19 @@ import com.sk89q.worldedit.util.Direction;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
 import com.sk89q.worldedit.world.block.BlockTypes;
 import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 public class WaterfallStructure extends Structure {
-	private static final Map<BlockVector3, Integer> blockLevels = new HashMap<>();
+	private static final List<Direction> CARDINAL_DIRECTIONS = Direction.valuesOf(Direction.Flag.CARDINAL);
+	private static final List<Direction> CARDINAL_AND_UPRIGHT_DIRECTIONS = Direction.valuesOf(Direction.Flag.CARDINAL | Direction.Flag.UPRIGHT);
+	// the maximum number of fluid ticks simulated for one waterfall
+	private static final int MAX_TICKS = 1 << 16;
 
 	private final FluidType fluid;
 	private final BlockProvider block;
@@ -45,7 +50,7 @@ public class WaterfallStructure extends Structure {
 	public boolean place(CaveGenContext ctx, BlockVector3 pos, Centroid centroid, boolean force) throws WorldEditException {
 		if (!force) {
 			int wallCount = 0;
-			for (Direction dir : Direction.valuesOf(Direction.Flag.CARDINAL | Direction.Flag.UPRIGHT)) {
+			for (Direction dir : CARDINAL_AND_UPRIGHT_DIRECTIONS) {
 				if (canPlaceOn(ctx, ctx.getBlock(pos.add(dir.toBlockVector())))) {
 					wallCount++;
 				}
@@ -56,22 +61,85 @@ public class WaterfallStructure extends Structure {
 		}
 
 		if (ctx.setBlock(pos, this.block.get(ctx, centroid))) {
-			simulateFluidTick(ctx, centroid, pos);
+			new FluidSimulation(ctx, centroid).run(pos);
 		}
-		blockLevels.clear();
 
 		return true;
 	}
 
-	private void simulateFluidTick(CaveGenContext ctx, Centroid centroid, BlockVector3 pos) {
-		BlockStateHolder<?> state = ctx.getBlock(pos);
-		int level = getLevel(pos, state);
-		int levelDecrease = fluid == FluidType.LAVA ? 2 : 1;
+	/**
+	 * Simulates the fluid flowing from a waterfall. The fluid ticks are processed depth first, in the same order as
+	 * Minecraft's recursive neighbour updates would, but with an explicit stack so that long cascades can't overflow.
+	 */
+	private final class FluidSimulation {
+		private static final int START = 0;
+		private static final int FLOW = 1;
+		private static final int FLOW_SIDEWAYS = 2;
+		private static final int DONE = 3;
+
+		private final CaveGenContext ctx;
+		private final Centroid centroid;
+		// the levels of non-fluid blocks, which can't store their level in their block state
+		private final LevelMap blockLevels = new LevelMap();
+		private final int levelDecrease = fluid == FluidType.LAVA ? 2 : 1;
+
+		private FluidSimulation(CaveGenContext ctx, Centroid centroid) {
+			this.ctx = ctx;
+			this.centroid = centroid;
+		}
+
+		private void run(BlockVector3 start) {
+			Deque<Tick> stack = new ArrayDeque<>();
+			stack.push(new Tick(start));
+			int ticks = 0;
+			while (!stack.isEmpty()) {
+				Tick tick = stack.peek();
+				BlockVector3 child = null;
+				switch (tick.stage) {
+					case START:
+						if (++ticks > MAX_TICKS) {
+							return;
+						}
+						tick.stage = FLOW;
+						child = updateLevel(tick);
+						break;
+					case FLOW:
+						child = flow(tick);
+						break;
+					case FLOW_SIDEWAYS:
+						if (tick.flowIndex == tick.flowDirs.length) {
+							tick.stage = DONE;
+						} else {
+							BlockVector3 offsetPos = tick.pos.add(tick.flowDirs[tick.flowIndex++].toBlockVector());
+							if (tryFlowInto(offsetPos, ctx.getBlock(offsetPos), tick.sidewaysLevel)) {
+								child = offsetPos;
+							}
+						}
+						break;
+					default:
+						stack.pop();
+						break;
+				}
+				if (child != null) {
+					stack.push(new Tick(child));
+				}
+			}
+		}
+
+		// recomputes the level of the block from its neighbours, returns the position to tick next if it changed
+		@Nullable
+		private BlockVector3 updateLevel(Tick tick) {
+			BlockVector3 pos = tick.pos;
+			BlockStateHolder<?> state = ctx.getBlock(pos);
+			int level = getLevel(pos, state);
+			tick.level = level;
+			if (level <= 0) {
+				return null;
+			}
 
-		if (level > 0) {
 			int minLevel = -100;
 			int adjacentSourceBlocks = 0;
-			for (Direction dir : Direction.valuesOf(Direction.Flag.CARDINAL)) {
+			for (Direction dir : CARDINAL_DIRECTIONS) {
 				BlockVector3 offsetPos = pos.add(dir.toBlockVector());
 				int depth = getLevel(offsetPos, ctx.getBlock(offsetPos));
 				if (depth >= 0) {
@@ -109,160 +177,252 @@ public class WaterfallStructure extends Structure {
 			}
 
 			if (newLevel != level) {
-				level = newLevel;
+				tick.level = newLevel;
 
 				if (newLevel < 0) {
 					ctx.setBlock(pos, Util.requireDefaultState(BlockTypes.AIR));
-				} else {
-					if (setLevel(ctx, centroid, pos, newLevel)) {
-						simulateFluidTick(ctx, centroid, pos);
-					}
+				} else if (setLevel(pos, newLevel)) {
+					return pos;
 				}
 			}
+			return null;
 		}
 
-		BlockVector3 posBelow = pos.add(0, -1, 0);
-		BlockStateHolder<?> blockBelow = ctx.getBlock(posBelow);
-		if (canFlowInto(ctx, posBelow, blockBelow)) {
-			// skipped: trigger mix effects
+		// flows down, or decides which directions to flow sideways in. Returns the position to tick next, if any
+		@Nullable
+		private BlockVector3 flow(Tick tick) {
+			BlockVector3 pos = tick.pos;
+			int level = tick.level;
+			tick.stage = DONE;
 
-			if (level >= flowDistance) {
-				tryFlowInto(ctx, centroid, posBelow, blockBelow, level);
-			} else {
-				tryFlowInto(ctx, centroid, posBelow, blockBelow, level + flowDistance);
-			}
-		} else if (level >= 0 && (level == 0 || isBlocked(ctx, posBelow, blockBelow))) {
-			Set<Direction> flowDirs = getPossibleFlowDirections(ctx, pos, level);
-			int newLevel = level + levelDecrease;
-			if (level >= flowDistance) {
-				newLevel = 1;
-			}
-			if (newLevel >= flowDistance) {
-				return;
-			}
-			for (Direction flowDir : flowDirs) {
-				BlockVector3 offsetPos = pos.add(flowDir.toBlockVector());
-				tryFlowInto(ctx, centroid, offsetPos, ctx.getBlock(offsetPos), newLevel);
+			BlockVector3 posBelow = pos.add(0, -1, 0);
+			BlockStateHolder<?> blockBelow = ctx.getBlock(posBelow);
+			if (canFlowInto(posBelow, blockBelow)) {
+				// skipped: trigger mix effects
+
+				int levelBelow = level >= flowDistance ? level : level + flowDistance;
+				return tryFlowInto(posBelow, blockBelow, levelBelow) ? posBelow : null;
+			} else if (level >= 0 && (level == 0 || isBlocked(ctx, posBelow, blockBelow))) {
+				Set<Direction> flowDirs = getPossibleFlowDirections(pos, level);
+				int newLevel = level + levelDecrease;
+				if (level >= flowDistance) {
+					newLevel = 1;
+				}
+				if (newLevel >= flowDistance) {
+					return null;
+				}
+				tick.flowDirs = flowDirs.toArray(new Direction[0]);
+				tick.sidewaysLevel = newLevel;
+				tick.stage = FLOW_SIDEWAYS;
 			}
+			return null;
 		}
-	}
 
-	private int getLevel(BlockVector3 pos, BlockStateHolder<?> state) {
-		if (!block.canProduce(state)) {
-			return -1;
-		}
-		if (fluid == FluidType.BLOCK || fluid == FluidType.SNOW_LAYER) {
-			return blockLevels.getOrDefault(pos, 0);
-		} else {
-			if (fluid == FluidType.WATER && state.getBlockType() != BlockTypes.WATER) {
+		private int getLevel(BlockVector3 pos, BlockStateHolder<?> state) {
+			if (!block.canProduce(state)) {
 				return -1;
 			}
-			if (fluid == FluidType.LAVA && state.getBlockType() != BlockTypes.LAVA) {
-				return -1;
+			if (fluid == FluidType.BLOCK || fluid == FluidType.SNOW_LAYER) {
+				int level = blockLevels.get(pos);
+				return level == LevelMap.MISSING ? 0 : level;
+			} else {
+				if (fluid == FluidType.WATER && state.getBlockType() != BlockTypes.WATER) {
+					return -1;
+				}
+				if (fluid == FluidType.LAVA && state.getBlockType() != BlockTypes.LAVA) {
+					return -1;
+				}
+				return state.<Integer>getState(PropertyKey.LEVEL);
 			}
-			return state.<Integer>getState(PropertyKey.LEVEL);
 		}
-	}
 
-	private boolean setLevel(CaveGenContext ctx, Centroid centroid, BlockVector3 pos, int level) {
-		if (fluid == FluidType.BLOCK) {
-			return !Integer.valueOf(level).equals(blockLevels.put(pos, level)) | ctx.setBlock(pos, block.get(ctx, centroid));
-		} else if (fluid == FluidType.SNOW_LAYER) {
-			BlockVector3 posBelow = pos.add(0, -1, 0);
-			if (ctx.getBlock(posBelow).getBlockType() == BlockTypes.SNOW) {
-				ctx.setBlock(posBelow, Util.requireDefaultState(BlockTypes.SNOW).with(PropertyKey.LAYERS, 8));
-			}
-			int layers = level == 0 ? 8 : 9 - (int) Math.ceil((double) level / flowDistance * 8);
-			if (layers <= 0) layers = 1;
-			else if (layers > 8) layers = 8;
-			if (ctx.getBlock(pos.add(0, 1, 0)).getBlockType() == BlockTypes.SNOW) {
-				layers = 8;
+		private boolean setLevel(BlockVector3 pos, int level) {
+			if (fluid == FluidType.BLOCK) {
+				return blockLevels.put(pos, level) != level | ctx.setBlock(pos, block.get(ctx, centroid));
+			} else if (fluid == FluidType.SNOW_LAYER) {
+				BlockVector3 posBelow = pos.add(0, -1, 0);
+				if (ctx.getBlock(posBelow).getBlockType() == BlockTypes.SNOW) {
+					ctx.setBlock(posBelow, Util.requireDefaultState(BlockTypes.SNOW).with(PropertyKey.LAYERS, 8));
+				}
+				int layers = level == 0 ? 8 : 9 - (int) Math.ceil((double) level / flowDistance * 8);
+				if (layers <= 0) layers = 1;
+				else if (layers > 8) layers = 8;
+				if (ctx.getBlock(pos.add(0, 1, 0)).getBlockType() == BlockTypes.SNOW) {
+					layers = 8;
+				}
+				return blockLevels.put(pos, level) != level | ctx.setBlock(pos,
+						Util.requireDefaultState(BlockTypes.SNOW).with(PropertyKey.LAYERS, layers));
+			} else if (fluid == FluidType.WATER) {
+				return ctx.setBlock(pos, Util.requireDefaultState(BlockTypes.WATER).with(PropertyKey.LEVEL, level));
+			} else {
+				return ctx.setBlock(pos, Util.requireDefaultState(BlockTypes.LAVA).with(PropertyKey.LEVEL, level));
 			}
-			return !Integer.valueOf(level).equals(blockLevels.put(pos, level)) | ctx.setBlock(pos,
-					Util.requireDefaultState(BlockTypes.SNOW).with(PropertyKey.LAYERS, layers));
-		} else if (fluid == FluidType.WATER) {
-			return ctx.setBlock(pos, Util.requireDefaultState(BlockTypes.WATER).with(PropertyKey.LEVEL, level));
-		} else {
-			return ctx.setBlock(pos, Util.requireDefaultState(BlockTypes.LAVA).with(PropertyKey.LEVEL, level));
 		}
-	}
 
-	private boolean canFlowInto(CaveGenContext ctx, BlockVector3 pos, BlockStateHolder<?> block) {
-		return !this.block.canProduce(block) && block.getBlockType() != BlockTypes.LAVA && !isBlocked(ctx, pos, block);
-	}
-
-	private void tryFlowInto(CaveGenContext ctx, Centroid centroid, BlockVector3 pos, BlockStateHolder<?> block, int level) {
-		if (!canFlowInto(ctx, pos, block)) {
-			return;
+		private boolean canFlowInto(BlockVector3 pos, BlockStateHolder<?> block) {
+			return !WaterfallStructure.this.block.canProduce(block) && block.getBlockType() != BlockTypes.LAVA && !isBlocked(ctx, pos, block);
 		}
 
-		// skipped: trigger mix effects and block dropping
-		if (setLevel(ctx, centroid, pos, level)) {
-			simulateFluidTick(ctx, centroid, pos);
+		// returns whether the fluid flowed into the block, which then needs to be ticked
+		private boolean tryFlowInto(BlockVector3 pos, BlockStateHolder<?> block, int level) {
+			if (!canFlowInto(pos, block)) {
+				return false;
+			}
+
+			// skipped: trigger mix effects and block dropping
+			return setLevel(pos, level);
 		}
-	}
 
-	private boolean isBlocked(CaveGenContext ctx, BlockVector3 pos, BlockStateHolder<?> block) {
-		return !canReplace(ctx, block) && !this.block.canProduce(block);
-	}
+		private Set<Direction> getPossibleFlowDirections(BlockVector3 pos, int level) {
+			int minDistanceToLower = Integer.MAX_VALUE;
+			Set<Direction> flowDirs = EnumSet.noneOf(Direction.class);
 
-	private Set<Direction> getPossibleFlowDirections(CaveGenContext ctx, BlockVector3 pos, int level) {
-		int minDistanceToLower = Integer.MAX_VALUE;
-		Set<Direction> flowDirs = EnumSet.noneOf(Direction.class);
+			for (Direction dir : CARDINAL_DIRECTIONS) {
+				BlockVector3 offsetPos = pos.add(dir.toBlockVector());
+				BlockStateHolder<?> offsetState = ctx.getBlock(offsetPos);
+
+				if (!isBlocked(ctx, offsetPos, offsetState) && (!block.canProduce(offsetState) || getLevel(offsetPos, offsetState) > 0)) {
+					int distanceToLower;
+					BlockVector3 posBelow = offsetPos.add(0, -1, 0);
+					if (isBlocked(ctx, posBelow, ctx.getBlock(posBelow))) {
+						distanceToLower = getDistanceToLower(offsetPos, 1, Util.getOpposite(dir));
+					} else {
+						distanceToLower = 0;
+					}
 
-		for (Direction dir : Direction.valuesOf(Direction.Flag.CARDINAL)) {
-			BlockVector3 offsetPos = pos.add(dir.toBlockVector());
-			BlockStateHolder<?> offsetState = ctx.getBlock(offsetPos);
+					if (distanceToLower < minDistanceToLower) {
+						flowDirs.clear();
+					}
 
-			if (!isBlocked(ctx, offsetPos, offsetState) && (!this.block.canProduce(offsetState) || getLevel(offsetPos, offsetState) > 0)) {
-				int distanceToLower;
-				BlockVector3 posBelow = offsetPos.add(0, -1, 0);
-				if (isBlocked(ctx, posBelow, ctx.getBlock(posBelow))) {
-					distanceToLower = getDistanceToLower(ctx, offsetPos, 1, Util.getOpposite(dir));
-				} else {
-					distanceToLower = 0;
+					if (distanceToLower <= minDistanceToLower) {
+						flowDirs.add(dir);
+						minDistanceToLower = distanceToLower;
+					}
 				}
+			}
 
-				if (distanceToLower < minDistanceToLower) {
-					flowDirs.clear();
+			return flowDirs;
+		}
+
+		private int getDistanceToLower(BlockVector3 pos, int distance, Direction excludingDir) {
+			int minDistanceToLower = Integer.MAX_VALUE;
+
+			for (Direction dir : CARDINAL_DIRECTIONS) {
+				if (dir == excludingDir) {
+					continue;
 				}
 
-				if (distanceToLower <= minDistanceToLower) {
-					flowDirs.add(dir);
-					minDistanceToLower = distanceToLower;
+				BlockVector3 offsetPos = pos.add(dir.toBlockVector());
+				BlockStateHolder<?> offsetState = ctx.getBlock(offsetPos);
+
+				if (!isBlocked(ctx, offsetPos, offsetState) && (block.canProduce(offsetState) || getLevel(offsetPos, offsetState) > 0)) {
+					if (!isBlocked(ctx, offsetPos.add(0, -1, 0), offsetState)) {
+						return distance;
+					}
+
+					if (distance < getSlopeFindDistance()) {
+						int distanceToLower = getDistanceToLower(offsetPos, distance + 1, Util.getOpposite(dir));
+						if (distanceToLower < minDistanceToLower) {
+							minDistanceToLower = distanceToLower;
+						}
+					}
 				}
 			}
+
+			return minDistanceToLower;
 		}
+	}
 
-		return flowDirs;
+	private static final class Tick {
+		private final BlockVector3 pos;
+		private int stage = FluidSimulation.START;
+		// the level of the block once it has been updated
+		private int level;
+		private Direction[] flowDirs;
+		private int flowIndex;
+		private int sidewaysLevel;
+
+		private Tick(BlockVector3 pos) {
+			this.pos = pos;
+		}
 	}
 
-	private int getDistanceToLower(CaveGenContext ctx, BlockVector3 pos, int distance, Direction excludingDir) {
-		int minDistanceToLower = Integer.MAX_VALUE;
+	/**
+	 * A map from block positions to levels, without boxing
+	 */
+	private static final class LevelMap {
+		private static final int MISSING = Integer.MIN_VALUE;
 
-		for (Direction dir : Direction.valuesOf(Direction.Flag.CARDINAL)) {
-			if (dir == excludingDir) {
-				continue;
-			}
+		private long[] keys = new long[16];
+		private int[] values = new int[16];
+		private boolean[] used = new boolean[16];
+		private int size;
 
-			BlockVector3 offsetPos = pos.add(dir.toBlockVector());
-			BlockStateHolder<?> offsetState = ctx.getBlock(offsetPos);
+		private static long key(BlockVector3 pos) {
+			return ((long) pos.getX() & 0x3ffffff) << 38 | ((long) pos.getZ() & 0x3ffffff) << 12 | (pos.getY() & 0xfff);
+		}
 
-			if (!isBlocked(ctx, offsetPos, offsetState) && (this.block.canProduce(offsetState) || getLevel(offsetPos, offsetState) > 0)) {
-				if (!isBlocked(ctx, offsetPos.add(0, -1, 0), offsetState)) {
-					return distance;
+		private static int slot(long key, int mask) {
+			long h = key * 0x9e3779b97f4a7c15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+
+		private int get(BlockVector3 pos) {
+			long key = key(pos);
+			int mask = keys.length - 1;
+			for (int slot = slot(key, mask); used[slot]; slot = (slot + 1) & mask) {
+				if (keys[slot] == key) {
+					return values[slot];
 				}
+			}
+			return MISSING;
+		}
 
-				if (distance < getSlopeFindDistance()) {
-					int distanceToLower = getDistanceToLower(ctx, offsetPos, distance + 1, Util.getOpposite(dir));
-					if (distanceToLower < minDistanceToLower) {
-						minDistanceToLower = distanceToLower;
+		// returns the previous level, or MISSING if there was none
+		private int put(BlockVector3 pos, int value) {
+			long key = key(pos);
+			int mask = keys.length - 1;
+			int slot = slot(key, mask);
+			for (; used[slot]; slot = (slot + 1) & mask) {
+				if (keys[slot] == key) {
+					int previous = values[slot];
+					values[slot] = value;
+					return previous;
+				}
+			}
+			used[slot] = true;
+			keys[slot] = key;
+			values[slot] = value;
+			if (++size * 2 > keys.length) {
+				grow();
+			}
+			return MISSING;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			boolean[] oldUsed = used;
+			keys = new long[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			used = new boolean[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldUsed[i]) {
+					int slot = slot(oldKeys[i], mask);
+					while (used[slot]) {
+						slot = (slot + 1) & mask;
 					}
+					used[slot] = true;
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
 				}
 			}
 		}
+	}
 
-		return minDistanceToLower;
+	private boolean isBlocked(CaveGenContext ctx, BlockVector3 pos, BlockStateHolder<?> block) {
+		return !canReplace(ctx, block) && !this.block.canProduce(block);
 	}
 
 	private int getSlopeFindDistance() {
@@ -190,7 +190,7 @@ public class CaveTrackerManager {
 					spawnPos.multiply(1, 0, 1).add(8 * INSTANCE_WIDTH_CHUNKS - 32, 255, 8 * INSTANCE_WIDTH_CHUNKS - 32)
 			);
 			Set<BlockVector2> accessedChunks = new HashSet<>();
-			try (CaveGenContext ctx = CaveGenContext.create(BukkitAdapter.adapt(theWorld), style, seed).limit(limit).outputAccessedChunksTo(accessedChunks)) {
+			try (CaveGenContext ctx = CaveGenContext.create(BukkitAdapter.adapt(theWorld), style, seed).limit(limit).outputAccessedChunksTo(accessedChunks).setWriteBehind(true).setParallel(true).setPipelined(true)) {
 				CaveGenerator.generateCave(ctx, spawnPos.toVector3());
 			} catch (WorldEditException e) {
 				throw new RuntimeException("Could not generate cave", e);
@@ -426,7 +426,7 @@ public class CommandListener implements TabExecutor {
 			Bukkit.getServer().getLogger().info("CaveTracker found, ID: " + t.getId() + " " + t.getJoinTime());
 		}
 		DescentIntoDarkness.instance.supplyAsync(() -> {
-			try (CaveGenContext ctx = CaveGenContext.create(BukkitAdapter.adapt(pos.getWorld()), style, seed.getAsLong()).setDebug(debug)) {
+			try (CaveGenContext ctx = CaveGenContext.create(BukkitAdapter.adapt(pos.getWorld()), style, seed.getAsLong()).setDebug(debug).setWriteBehind(true).setPipelined(true)) {
 				currentCaveGen = ctx;
 				return CaveGenerator.generateCave(ctx, BukkitAdapter.asVector(pos), size.getAsInt());
 			}
@@ -1,9 +1,67 @@
 package com.gmail.sharpcastle33.did.provider;
 
+import com.sk89q.worldedit.world.block.BlockState;
 import com.sk89q.worldedit.world.block.BlockStateHolder;
+import com.sk89q.worldedit.world.block.BlockTypesCache;
 
+import java.util.Collection;
 import java.util.function.Predicate;
 
 @FunctionalInterface
 public interface BlockPredicate extends Predicate<BlockStateHolder<?>> {
+
+	/**
+	 * A predicate that matches a fixed set of block states, stored as a bitset over block state ordinals
+	 */
+	final class StateSet implements BlockPredicate {
+		private final long[] bits;
+
+		private StateSet(long[] bits) {
+			this.bits = bits;
+		}
+
+		/**
+		 * Creates a predicate matching all the block states that fuzzy match any of the given blocks
+		 */
+		public static StateSet of(Collection<? extends BlockStateHolder<?>> blocks) {
+			long[] bits = new long[(BlockTypesCache.states.length + 63) >> 6];
+			for (BlockStateHolder<?> wanted : blocks) {
+				for (BlockState state : wanted.getBlockType().getAllStates()) {
+					if (wanted.equalsFuzzy(state)) {
+						int ordinal = state.getOrdinal();
+						bits[ordinal >> 6] |= 1L << ordinal;
+					}
+				}
+			}
+			return new StateSet(bits);
+		}
+
+		/**
+		 * Creates a predicate matching all the block states that the given predicate matches, which must only depend on
+		 * the block state
+		 */
+		public static StateSet matching(Predicate<? super BlockState> predicate) {
+			long[] bits = new long[(BlockTypesCache.states.length + 63) >> 6];
+			for (int ordinal = 0; ordinal < BlockTypesCache.states.length; ordinal++) {
+				if (predicate.test(BlockTypesCache.states[ordinal])) {
+					bits[ordinal >> 6] |= 1L << ordinal;
+				}
+			}
+			return new StateSet(bits);
+		}
+
+		public StateSet invert() {
+			long[] inverted = new long[bits.length];
+			for (int i = 0; i < bits.length; i++) {
+				inverted[i] = ~bits[i];
+			}
+			return new StateSet(inverted);
+		}
+
+		@Override
+		public boolean test(BlockStateHolder<?> block) {
+			int ordinal = block.toImmutableState().getOrdinal();
+			return (bits[ordinal >> 6] & (1L << ordinal)) != 0;
+		}
+	}
 }
@@ -51,27 +51,16 @@ public interface BlockProvider {
 
 	final class Weighted implements BlockProvider {
 		private final BlockStateHolder<?>[] blocks;
-		private final int[] weights;
+		private final WeightedIndex weights;
 
 		public Weighted(BlockStateHolder<?>[] blocks, int[] weights) {
 			this.blocks = blocks;
-			this.weights = weights;
+			this.weights = new WeightedIndex(weights);
 		}
 
 		@Override
 		public BlockStateHolder<?> get(CaveGenContext ctx, Centroid centroid) {
-			int total = 0;
-			for (int weight : weights) {
-				total += weight;
-			}
-			int choice = ctx.rand.nextInt(total);
-			for (int i = 0; i < blocks.length; i++) {
-				if (choice < weights[i]) {
-					return blocks[i];
-				}
-				choice -= weights[i];
-			}
-			return blocks[blocks.length - 1];
+			return blocks[weights.get(ctx.rand.nextInt(weights.getTotal()))];
 		}
 
 		@Override
@@ -90,30 +79,24 @@ public interface BlockProvider {
 		}
 	}
 
-	final class RoomWeighted implements BlockProvider {
+	final class RoomWeighted implements BlockProvider, CaveGenContext.RoomChooser {
 		private final BlockProvider[] blocks;
-		private final int[] weights;
+		private final WeightedIndex weights;
 
 		public RoomWeighted(BlockProvider[] blocks, int[] weights) {
 			this.blocks = blocks;
-			this.weights = weights;
+			this.weights = new WeightedIndex(weights);
 		}
 
 		@Override
 		public BlockStateHolder<?> get(CaveGenContext ctx, Centroid centroid) {
-			int total = 0;
-			for (int weight : weights) {
-				total += weight;
-			}
-			long seed = ctx.caveSeed + 133742069L * centroid.roomIndex;
-			int choice = new Random(seed).nextInt(total);
-			for (int i = 0; i < blocks.length; i++) {
-				if (choice < weights[i]) {
-					return blocks[i].get(ctx, centroid);
-				}
-				choice -= weights[i];
-			}
-			return blocks[blocks.length - 1].get(ctx, centroid);
+			return blocks[ctx.getRoomChoice(this, centroid.roomIndex)].get(ctx, centroid);
+		}
+
+		@Override
+		public int choose(long caveSeed, int roomIndex) {
+			long seed = caveSeed + 133742069L * roomIndex;
+			return weights.get(new Random(seed).nextInt(weights.getTotal()));
 		}
 
 		@Override
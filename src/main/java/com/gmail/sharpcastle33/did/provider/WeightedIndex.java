@@ -0,0 +1,58 @@
+package com.gmail.sharpcastle33.did.provider;
+
+/**
+ * Maps a random number in [0, total weight) to the index it selects, the same as subtracting each weight in turn until
+ * the number is less than the weight. Small total weights use a lookup table, larger ones a binary search over the
+ * cumulative weights.
+ */
+final class WeightedIndex {
+	private static final int MAX_LOOKUP_SIZE = 1024;
+
+	private final int total;
+	private final int[] cumulativeWeights;
+	private final byte[] lookup;
+
+	WeightedIndex(int[] weights) {
+		this.cumulativeWeights = new int[weights.length];
+		int total = 0;
+		for (int i = 0; i < weights.length; i++) {
+			total += weights[i];
+			cumulativeWeights[i] = total;
+		}
+		this.total = total;
+
+		if (total <= MAX_LOOKUP_SIZE && weights.length <= 256) {
+			lookup = new byte[total];
+			int index = 0;
+			for (int choice = 0; choice < total; choice++) {
+				while (choice >= cumulativeWeights[index]) {
+					index++;
+				}
+				lookup[choice] = (byte) index;
+			}
+		} else {
+			lookup = null;
+		}
+	}
+
+	int getTotal() {
+		return total;
+	}
+
+	int get(int choice) {
+		if (lookup != null) {
+			return lookup[choice] & 0xff;
+		}
+		int low = 0;
+		int high = cumulativeWeights.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (choice < cumulativeWeights[mid]) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+}